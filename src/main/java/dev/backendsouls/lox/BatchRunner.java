@@ -0,0 +1,137 @@
+package dev.backendsouls.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs many scripts in one JVM, in parallel across cores. Every script gets its own interpreter,
+// error reporter and captured output; only the scanner's keyword table and identifier interner,
+// and the prelude if one is given, are shared. Results are printed in the order the scripts were
+// found, followed by a timing report.
+final class BatchRunner {
+    private record Result(Path script, String output, int status, long nanos) {
+    }
+
+    private BatchRunner() {
+    }
+
+    // Runs every .lox file in a directory, or every file matching a glob like scripts/*.lox.
+    // Returns the worst exit status: 65 if any script had a syntax error, 70 for a runtime error.
+    // Scripts start on top of the prelude when there is one.
+    static int run(Path pattern, Path outputDirectory, Prelude prelude, PrintStream out) throws IOException {
+        var scripts = find(pattern);
+        var start = System.nanoTime();
+        var threads = Runtime.getRuntime().availableProcessors();
+        var results = new ArrayList<Result>();
+
+        try (var executor = Executors.newFixedThreadPool(threads, task -> new Thread(null, task, "batch", Lox.STACK_SIZE))) {
+            var futures = new ArrayList<Future<Result>>();
+
+            for (var script : scripts) {
+                futures.add(executor.submit(() -> runScript(script, prelude)));
+            }
+
+            for (var future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException error) {
+            throw new IOException("Batch run failed.", error);
+        }
+
+        var status = 0;
+
+        for (var result : results) {
+            if (outputDirectory != null) {
+                Files.createDirectories(outputDirectory);
+                Files.writeString(outputDirectory.resolve(result.script().getFileName() + ".out"), result.output());
+            } else {
+                out.println("==> " + result.script() + " <==");
+                out.print(result.output());
+            }
+
+            status = Math.max(status, result.status());
+        }
+
+        report(results, System.nanoTime() - start, threads, out);
+        return status;
+    }
+
+    private static List<Path> find(Path pattern) throws IOException {
+        var directory = pattern;
+        var glob = "*.lox";
+
+        if (!Files.isDirectory(pattern)) {
+            directory = pattern.getParent() != null ? pattern.getParent() : Path.of("");
+            glob = pattern.getFileName().toString();
+        }
+
+        var scripts = new ArrayList<Path>();
+
+        try (var stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(scripts::add);
+        }
+
+        scripts.sort(null);
+        return scripts;
+    }
+
+    private static Result runScript(Path script, Prelude prelude) {
+        var start = System.nanoTime();
+        var buffer = new ByteArrayOutputStream();
+        var stream = new PrintStream(buffer, true, Charset.defaultCharset());
+
+        // Errors are interleaved with output, as they would be on a terminal.
+        var reporter = new ErrorReporter(stream);
+        int status;
+
+        try {
+            var source = Files.readString(script, Charset.defaultCharset());
+            var tokens = new Scanner(source, 1, reporter).scanTokens();
+            var statements = new Parser(tokens, reporter, Parser.LAZY).parse();
+
+            if (!reporter.hadError()) {
+                TypeChecker.check(statements, reporter);
+            }
+
+            if (!reporter.hadError()) {
+                var interpreter = prelude != null ? new Interpreter(prelude, reporter, stream) : new Interpreter(reporter, stream);
+                interpreter.interpret(statements);
+            }
+
+            status = reporter.hadError() ? 65 : reporter.hadRuntimeError() ? 70 : 0;
+        } catch (IOException | RuntimeException error) {
+            // An unreadable script, or one that trips over a bug, fails on its own and the rest
+            // still run.
+            stream.println("Script failed: " + error);
+            status = 70;
+        }
+
+        return new Result(script, buffer.toString(Charset.defaultCharset()), status, System.nanoTime() - start);
+    }
+
+    private static void report(List<Result> results, long wallNanos, int threads, PrintStream out) {
+        var total = 0L;
+        var failed = 0;
+
+        out.println("==> timing <==");
+
+        for (var result : results) {
+            total += result.nanos();
+            failed += result.status() != 0 ? 1 : 0;
+
+            var status = result.status() == 0 ? "ok" : "exit " + result.status();
+            out.printf("%10.2f ms  %-8s %s%n", result.nanos() / 1e6, status, result.script());
+        }
+
+        out.printf("%d scripts, %d failed, %.2f ms total script time, %.2f ms wall time on %d threads%n",
+                results.size(), failed, total / 1e6, wallNanos / 1e6, threads);
+    }
+}
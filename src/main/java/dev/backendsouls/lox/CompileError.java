@@ -0,0 +1,11 @@
+package dev.backendsouls.lox;
+
+public class CompileError extends RuntimeException {
+    // Null when the failure isn't tied to a place in the script, e.g. javac itself failing.
+    final Token token;
+
+    public CompileError(Token token, String message) {
+        super(message);
+        this.token = token;
+    }
+}
@@ -0,0 +1,53 @@
+package dev.backendsouls.lox;
+
+import java.util.List;
+
+public class CompiledFunction implements LoxCallable {
+    public interface Body {
+        Object invoke(Interpreter interpreter, Object[] arguments);
+    }
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final String name;
+
+    private final int arity;
+
+    private final Body body;
+
+    public CompiledFunction(String name, int arity, Body body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return this.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return this.body.invoke(interpreter, arguments.toArray());
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return this.body.invoke(interpreter, NO_ARGUMENTS);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object argument) {
+        return this.body.invoke(interpreter, new Object[]{argument});
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        return this.body.invoke(interpreter, new Object[]{first, second});
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + this.name + ">";
+    }
+}
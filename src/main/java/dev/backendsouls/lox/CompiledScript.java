@@ -0,0 +1,92 @@
+package dev.backendsouls.lox;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+public final class CompiledScript {
+    private static final class ScriptLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        ScriptLoader(Map<String, byte[]> classes) {
+            super(CompiledScript.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            var bytes = this.classes.get(name);
+
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+
+            return this.defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private final String className;
+
+    private final Map<String, byte[]> classes;
+
+    CompiledScript(String className, Map<String, byte[]> classes) {
+        this.className = className;
+        this.classes = classes;
+    }
+
+    public String className() {
+        return this.className;
+    }
+
+    public Class<?> load() {
+        try {
+            return new ScriptLoader(this.classes).loadClass(this.className);
+        } catch (ClassNotFoundException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    public void run(Interpreter interpreter) {
+        try {
+            var run = MethodHandles.publicLookup().findStatic(
+                    this.load(), "run", MethodType.methodType(void.class, Interpreter.class)
+            );
+            run.invokeExact(interpreter);
+        } catch (RuntimeException | Error error) {
+            throw error;
+        } catch (Throwable error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    public void writeClasses(Path directory) throws IOException {
+        for (var entry : this.classes.entrySet()) {
+            var file = directory.resolve(entry.getKey().replace('.', '/') + ".class");
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+    }
+
+    // The jar only holds the script; run it with jlox on the class path, e.g.
+    // java -cp fib.jar:jlox.jar Fib
+    public void writeJar(Path jar) throws IOException {
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, this.className);
+
+        try (var output = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            for (var entry : this.classes.entrySet()) {
+                output.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.backendsouls.lox;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ahead-of-time backend: the script is translated to Java source by JavaEmitter and handed to the
+// JDK's own compiler in memory, so HotSpot sees ordinary bytecode it can inline and optimize.
+public final class Compiler {
+    private Compiler() {
+    }
+
+    public static CompiledScript compile(String className, List<Stmt> statements) {
+        var source = new JavaEmitter(className).script(statements);
+        return new CompiledScript(className, javac(className, source));
+    }
+
+    static Map<String, byte[]> javac(String className, String source) {
+        var javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new CompileError(null, "No Java compiler available; the compiler needs a JDK, not a JRE.");
+        }
+
+        var classes = new HashMap<String, byte[]>();
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var standardFileManager = javac.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+
+        var fileManager = new ForwardingJavaFileManager<>(standardFileManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(
+                    Location location, String name, JavaFileObject.Kind kind, FileObject sibling
+            ) {
+                var uri = URI.create("memory:///" + name.replace('.', '/') + kind.extension);
+
+                return new SimpleJavaFileObject(uri, kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream() {
+                            @Override
+                            public void close() {
+                                classes.put(name, this.toByteArray());
+                            }
+                        };
+                    }
+                };
+            }
+        };
+
+        var uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        var unit = new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        var options = List.of("-classpath", classpath(), "-proc:none", "-nowarn");
+        var succeeded = javac.getTask(null, fileManager, diagnostics, options, null, List.of(unit)).call();
+
+        if (!succeeded) {
+            var message = new StringBuilder("Generated code failed to compile:");
+            for (var diagnostic : diagnostics.getDiagnostics()) {
+                message.append('\n').append(diagnostic.getMessage(null));
+            }
+
+            throw new CompileError(null, message.toString());
+        }
+
+        return classes;
+    }
+
+    // Generated code only references the runtime, which isn't necessarily on java.class.path
+    // (e.g. when jlox itself was loaded by another class loader), so add where it came from.
+    private static String classpath() {
+        var classpath = System.getProperty("java.class.path");
+
+        try {
+            var location = LoxRuntime.class.getProtectionDomain().getCodeSource().getLocation();
+            return Path.of(location.toURI()) + File.pathSeparator + classpath;
+        } catch (URISyntaxException | NullPointerException error) {
+            return classpath;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package dev.backendsouls.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Keeps one warm JVM serving scripts over a Unix domain socket, so repeated short runs skip JVM
+// startup and interpreter warm-up. Every request gets its own interpreter and error reporter,
+// like a batch run; parsed scripts, the scanner's interner and the prelude are shared.
+//
+// A request is the script's source, sent until the client shuts down its output. The reply is a
+// sequence of frames: a kind byte, then for OUT and ERR a length and that many bytes of output, and
+// for EXIT the script's status (0, 65 or 70), which ends the reply. See DaemonClient.
+final class Daemon {
+    static final byte OUT = 'o';
+
+    static final byte ERR = 'e';
+
+    static final byte EXIT = 'x';
+
+    private Daemon() {
+    }
+
+    static void serve(Path socket, Prelude prelude) throws IOException {
+        Files.deleteIfExists(socket);
+
+        try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            System.err.println("Listening on " + socket);
+
+            while (true) {
+                var client = server.accept();
+                new Thread(null, () -> handle(client, prelude), "daemon", Lox.STACK_SIZE).start();
+            }
+        }
+    }
+
+    private static void handle(SocketChannel client, Prelude prelude) {
+        try (client) {
+            var source = new String(Channels.newInputStream(client).readAllBytes(), StandardCharsets.UTF_8);
+            var frames = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            var out = new PrintStream(new BufferedOutputStream(new Frames(frames, OUT)), true, StandardCharsets.UTF_8);
+            var err = new PrintStream(new BufferedOutputStream(new Frames(frames, ERR)), true, StandardCharsets.UTF_8);
+            var status = run(source, prelude, out, err);
+
+            out.flush();
+            err.flush();
+
+            synchronized (frames) {
+                frames.writeByte(EXIT);
+                frames.writeInt(status);
+                frames.flush();
+            }
+        } catch (IOException error) {
+            // The client went away; there is nobody left to report to.
+        }
+    }
+
+    private static int run(String source, Prelude prelude, PrintStream out, PrintStream err) {
+        var reporter = new ErrorReporter(err);
+        var statements = Session.parse(source, reporter);
+
+        if (statements != null) {
+            var interpreter = prelude != null ? new Interpreter(prelude, reporter, out) : new Interpreter(reporter, out);
+            interpreter.interpret(statements);
+        }
+
+        return reporter.hadError() ? 65 : reporter.hadRuntimeError() ? 70 : 0;
+    }
+
+    // Turns every write into one frame of the given kind. Scripts may print from several threads,
+    // so frames are written whole under the lock of the shared stream.
+    private static final class Frames extends OutputStream {
+        private final DataOutputStream frames;
+
+        private final byte kind;
+
+        Frames(DataOutputStream frames, byte kind) {
+            this.frames = frames;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (this.frames) {
+                this.frames.writeByte(this.kind);
+                this.frames.writeInt(length);
+                this.frames.write(bytes, offset, length);
+                this.frames.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dev.backendsouls.lox;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The thin side of Daemon: sends a script, copies the frames that come back to stdout and stderr
+// and exits with the script's status. It touches no interpreter classes, so it starts about as
+// fast as a JVM can.
+public final class DaemonClient {
+    private DaemonClient() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: jlox-client <socket> <script>");
+            System.exit(64);
+        }
+
+        var source = Files.readAllBytes(Path.of(args[1]));
+
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(args[0]));
+            Channels.newOutputStream(channel).write(source);
+            channel.shutdownOutput();
+
+            var frames = new DataInputStream(Channels.newInputStream(channel));
+
+            while (true) {
+                var kind = frames.readByte();
+
+                if (kind == Daemon.EXIT) {
+                    System.out.flush();
+                    System.exit(frames.readInt());
+                }
+
+                var bytes = new byte[frames.readInt()];
+                frames.readFully(bytes);
+                (kind == Daemon.OUT ? System.out : System.err).write(bytes);
+            }
+        }
+    }
+}
@@ -1,28 +1,92 @@
 package dev.backendsouls.lox;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Environment {
-    private final Environment enclosing;
+    // Not final: a frame nobody captured is reset and reused; see Interpreter.frame.
+    private Environment enclosing;
 
-    private final Map<String, Object> values = new HashMap<>();
+    // Globals are read by tasks while the main thread goes on defining and assigning them, so their
+    // map is synchronized. Frames belong to one thread and keep a plain one.
+    private final Map<String, Object> values;
+
+    // Globals built on a prelude read it directly and copy a variable into their own values only
+    // when they assign it, so creating one costs nothing however large the prelude is.
+    private final Map<String, Object> prelude;
+
+    // A frozen environment is shared between interpreters and can no longer be assigned.
+    private boolean frozen = false;
+
+    // Set once a closure holds this frame, directly or through a nested one. Captured frames may
+    // outlive their block or call, so they are never recycled.
+    private boolean captured = false;
 
     public Environment() {
         this.enclosing = null;
+        this.values = Collections.synchronizedMap(new HashMap<>());
+        this.prelude = Map.of();
+    }
+
+    Environment(Prelude prelude) {
+        this.enclosing = null;
+        this.values = Collections.synchronizedMap(new HashMap<>());
+        this.prelude = prelude.globals().values;
     }
 
     public Environment(Environment environment) {
         this.enclosing = environment;
+        this.values = new HashMap<>();
+        this.prelude = Map.of();
+    }
+
+    Environment enclosing() {
+        return this.enclosing;
+    }
+
+    Map<String, Object> values() {
+        return this.values;
+    }
+
+    Map<String, Object> prelude() {
+        return this.prelude;
+    }
+
+    void freeze() {
+        this.frozen = true;
+    }
+
+    void capture() {
+        for (var environment = this; environment != null && !environment.captured; environment = environment.enclosing) {
+            environment.captured = true;
+        }
+    }
+
+    boolean isCaptured() {
+        return this.captured;
+    }
+
+    // Empties a frame that is no longer in use, so it can stand in for a new one.
+    void reset(Environment enclosing) {
+        this.enclosing = enclosing;
+        this.values.clear();
     }
 
     void define(String name, Object value) {
         this.values.put(name, value);
     }
 
+    // Looks a name up once unless it's missing or nil, which keeps synchronized globals to one lock.
     Object get(Token name) {
-        if (this.values.containsKey(name.lexeme())) {
-            return this.values.get(name.lexeme());
+        var value = this.values.get(name.lexeme());
+
+        if (value != null || this.values.containsKey(name.lexeme())) {
+            return value;
+        }
+
+        if (this.prelude.containsKey(name.lexeme())) {
+            return this.prelude.get(name.lexeme());
         }
 
         if (this.enclosing != null) {
@@ -32,8 +96,25 @@ public class Environment {
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
     }
 
+    boolean contains(Token name) {
+        if (this.values.containsKey(name.lexeme()) || this.prelude.containsKey(name.lexeme())) {
+            return true;
+        }
+
+        return this.enclosing != null && this.enclosing.contains(name);
+    }
+
     void assign(Token name, Object value) {
-        if (this.values.containsKey(name.lexeme())) {
+        if (this.frozen) {
+            throw new RuntimeError(name, "Can't assign to prelude variable '" + name.lexeme() + "'.");
+        }
+
+        // replace() only writes a name that is already there; a null result also means it was nil.
+        if (this.values.replace(name.lexeme(), value) != null || this.values.containsKey(name.lexeme())) {
+            return;
+        }
+
+        if (this.prelude.containsKey(name.lexeme())) {
             this.values.put(name.lexeme(), value);
             return;
         }
@@ -0,0 +1,54 @@
+package dev.backendsouls.lox;
+
+import java.io.PrintStream;
+
+// Where scan, parse and runtime errors of one run go, and whether any happened. Lox has a single
+// shared one for the command line; sessions and embedders that run several scripts at once give
+// each its own.
+public class ErrorReporter {
+    private final PrintStream err;
+
+    private boolean hadError = false;
+
+    private boolean hadRuntimeError = false;
+
+    public ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    public boolean hadError() {
+        return this.hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return this.hadRuntimeError;
+    }
+
+    public void reset() {
+        this.hadError = false;
+        this.hadRuntimeError = false;
+    }
+
+    void error(final int line, final String message) {
+        this.report(line, "", message);
+    }
+
+    void error(final Token token, final String message) {
+        if (token.tokenType() == TokenType.EOF) {
+            this.report(token.line(), " at end", message);
+            return;
+        }
+
+        this.report(token.line(), " at '" + token.lexeme() + "'", message);
+    }
+
+    void runtimeError(RuntimeError error) {
+        this.hadRuntimeError = true;
+        this.err.println(error.getMessage() + "\n[line " + error.token.line() + "]");
+    }
+
+    private void report(final int line, final String where, final String message) {
+        this.hadError = true;
+        this.err.println("[line " + line + "] Error " + where + ": " + message);
+    }
+}
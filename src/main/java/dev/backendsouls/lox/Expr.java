@@ -2,19 +2,37 @@ package dev.backendsouls.lox;
 
 import java.util.List;
 
-public interface Expr {
+public sealed interface Expr {
     interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitBinaryExpr(Binary expr);
         R visitCallExpr(Call expr);
         R visitGroupingExpr(Grouping expr);
+        R visitIndexExpr(Index expr);
+        R visitIndexSetExpr(IndexSet expr);
         R visitLiteralExpr(Literal expr);
         R visitLogicalExpr(Logical expr);
         R visitUnaryExpr(Unary expr);
         R visitVariableExpr(Variable expr);
     }
 
+    int ASSIGN = 0;
+    int BINARY = 1;
+    int CALL = 2;
+    int GROUPING = 3;
+    int INDEX = 4;
+    int INDEX_SET = 5;
+    int LITERAL = 6;
+    int LOGICAL = 7;
+    int UNARY = 8;
+    int VARIABLE = 9;
+
     record Assign(Token name, Expr value) implements Expr {
+        @Override
+        public int tag() {
+            return ASSIGN;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
@@ -22,6 +40,11 @@ public interface Expr {
     }
 
     record Binary(Expr left, Token operator, Expr right) implements Expr {
+        @Override
+        public int tag() {
+            return BINARY;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
@@ -29,6 +52,11 @@ public interface Expr {
     }
 
     record Call(Expr callee, Token paren, List<Expr> arguments) implements Expr {
+        @Override
+        public int tag() {
+            return CALL;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
@@ -36,13 +64,47 @@ public interface Expr {
     }
 
     record Grouping(Expr expression) implements Expr {
+        @Override
+        public int tag() {
+            return GROUPING;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
     }
 
+    record Index(Expr object, Token bracket, Expr index) implements Expr {
+        @Override
+        public int tag() {
+            return INDEX;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexExpr(this);
+        }
+    }
+
+    record IndexSet(Expr object, Token bracket, Expr index, Expr value) implements Expr {
+        @Override
+        public int tag() {
+            return INDEX_SET;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexSetExpr(this);
+        }
+    }
+
     record Literal(Object value) implements Expr {
+        @Override
+        public int tag() {
+            return LITERAL;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
@@ -50,6 +112,11 @@ public interface Expr {
     }
 
     record Logical(Expr left, Token operator, Expr right) implements Expr {
+        @Override
+        public int tag() {
+            return LOGICAL;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
@@ -57,6 +124,11 @@ public interface Expr {
     }
 
     record Unary(Token operator, Expr right) implements Expr {
+        @Override
+        public int tag() {
+            return UNARY;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
@@ -64,11 +136,49 @@ public interface Expr {
     }
 
     record Variable(Token name) implements Expr {
+        @Override
+        public int tag() {
+            return VARIABLE;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
     }
 
+    int tag();
+
     <R> R accept(Visitor<R> visitor);
+
+    static <R> R dispatch(Expr expr, Visitor<R> visitor) {
+        return switch (expr.tag()) {
+            case ASSIGN -> visitor.visitAssignExpr((Assign) expr);
+            case BINARY -> visitor.visitBinaryExpr((Binary) expr);
+            case CALL -> visitor.visitCallExpr((Call) expr);
+            case GROUPING -> visitor.visitGroupingExpr((Grouping) expr);
+            case INDEX -> visitor.visitIndexExpr((Index) expr);
+            case INDEX_SET -> visitor.visitIndexSetExpr((IndexSet) expr);
+            case LITERAL -> visitor.visitLiteralExpr((Literal) expr);
+            case LOGICAL -> visitor.visitLogicalExpr((Logical) expr);
+            case UNARY -> visitor.visitUnaryExpr((Unary) expr);
+            case VARIABLE -> visitor.visitVariableExpr((Variable) expr);
+            default -> throw new IllegalStateException("Unknown tag " + expr.tag());
+        };
+    }
+
+    static <R> R match(Expr expr, Visitor<R> visitor) {
+        return switch (expr) {
+            case Assign node -> visitor.visitAssignExpr(node);
+            case Binary node -> visitor.visitBinaryExpr(node);
+            case Call node -> visitor.visitCallExpr(node);
+            case Grouping node -> visitor.visitGroupingExpr(node);
+            case Index node -> visitor.visitIndexExpr(node);
+            case IndexSet node -> visitor.visitIndexSetExpr(node);
+            case Literal node -> visitor.visitLiteralExpr(node);
+            case Logical node -> visitor.visitLogicalExpr(node);
+            case Unary node -> visitor.visitUnaryExpr(node);
+            case Variable node -> visitor.visitVariableExpr(node);
+        };
+    }
 }
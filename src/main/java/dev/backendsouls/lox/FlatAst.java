@@ -0,0 +1,310 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Generated by tool/GenerateAst: Expr and Stmt trees flattened into parallel arrays. Node n has
+// kind kinds[n] and its fields, in declaration order, at operands[firsts[n]...]: child nodes by
+// index (-1 for null), booleans as 0 or 1, lists as the offset of a count followed by node
+// indices, and everything else as an index into the constant pool. A function declaration also
+// keeps its record as a last constant, because it turns into a LoxFunction at runtime.
+final class FlatAst {
+    static final int ASSIGN_EXPR = 0;
+    static final int BINARY_EXPR = 1;
+    static final int CALL_EXPR = 2;
+    static final int GROUPING_EXPR = 3;
+    static final int INDEX_EXPR = 4;
+    static final int INDEX_SET_EXPR = 5;
+    static final int LITERAL_EXPR = 6;
+    static final int LOGICAL_EXPR = 7;
+    static final int UNARY_EXPR = 8;
+    static final int VARIABLE_EXPR = 9;
+    static final int BLOCK_STMT = 10;
+    static final int EXPRESSION_STMT = 11;
+    static final int FOR_STMT = 12;
+    static final int FUNCTION_STMT = 13;
+    static final int IF_STMT = 14;
+    static final int PRINT_STMT = 15;
+    static final int RETURN_STMT = 16;
+    static final int VAR_STMT = 17;
+    static final int WHILE_STMT = 18;
+    static final int YIELD_STMT = 19;
+
+    final int[] kinds;
+    final int[] firsts;
+    final int[] operands;
+    final Object[] constants;
+
+    // The list of top-level statements.
+    final int root;
+
+    private FlatAst(Builder builder, int root) {
+        this.kinds = Arrays.copyOf(builder.kinds, builder.nodes);
+        this.firsts = Arrays.copyOf(builder.firsts, builder.nodes);
+        this.operands = Arrays.copyOf(builder.operands, builder.size);
+        this.constants = builder.constants.toArray();
+        this.root = root;
+    }
+
+    static FlatAst of(List<Stmt> statements) {
+        var builder = new Builder();
+        var root = builder.stmts(statements);
+
+        return new FlatAst(builder, root);
+    }
+
+    int operand(int node, int field) {
+        return this.operands[this.firsts[node] + field];
+    }
+
+    Object constant(int node, int field) {
+        return this.constants[this.operands[this.firsts[node] + field]];
+    }
+
+    Token token(int node, int field) {
+        return (Token) this.constant(node, field);
+    }
+
+    private static final class Builder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        private int[] kinds = new int[64];
+        private int[] firsts = new int[64];
+        private int[] operands = new int[256];
+        private final List<Object> constants = new ArrayList<>();
+        private int nodes = 0;
+        private int size = 0;
+
+        private int node(int kind, int fields) {
+            if (this.nodes == this.kinds.length) {
+                this.kinds = Arrays.copyOf(this.kinds, this.nodes * 2);
+                this.firsts = Arrays.copyOf(this.firsts, this.nodes * 2);
+            }
+
+            this.kinds[this.nodes] = kind;
+            this.firsts[this.nodes] = this.reserve(fields);
+
+            return this.nodes++;
+        }
+
+        private int reserve(int count) {
+            while (this.size + count > this.operands.length) {
+                this.operands = Arrays.copyOf(this.operands, this.operands.length * 2);
+            }
+
+            this.size += count;
+            return this.size - count;
+        }
+
+        private void set(int node, int field, int value) {
+            this.operands[this.firsts[node] + field] = value;
+        }
+
+        private int constant(Object value) {
+            this.constants.add(value);
+            return this.constants.size() - 1;
+        }
+
+        private int expr(Expr expr) {
+            return expr == null ? -1 : expr.accept(this);
+        }
+
+        private int stmt(Stmt stmt) {
+            return stmt == null ? -1 : stmt.accept(this);
+        }
+
+        private int exprs(List<Expr> exprs) {
+            var list = this.reserve(exprs.size() + 1);
+            this.operands[list] = exprs.size();
+
+            for (var i = 0; i < exprs.size(); i++) {
+                var child = this.expr(exprs.get(i));
+                this.operands[list + 1 + i] = child;
+            }
+
+            return list;
+        }
+
+        private int stmts(List<Stmt> stmts) {
+            var list = this.reserve(stmts.size() + 1);
+            this.operands[list] = stmts.size();
+
+            for (var i = 0; i < stmts.size(); i++) {
+                var child = this.stmt(stmts.get(i));
+                this.operands[list + 1 + i] = child;
+            }
+
+            return list;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            var node = this.node(ASSIGN_EXPR, 2);
+            this.set(node, 0, this.constant(expr.name()));
+            this.set(node, 1, this.expr(expr.value()));
+            return node;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            var node = this.node(BINARY_EXPR, 3);
+            this.set(node, 0, this.expr(expr.left()));
+            this.set(node, 1, this.constant(expr.operator()));
+            this.set(node, 2, this.expr(expr.right()));
+            return node;
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            var node = this.node(CALL_EXPR, 3);
+            this.set(node, 0, this.expr(expr.callee()));
+            this.set(node, 1, this.constant(expr.paren()));
+            this.set(node, 2, this.exprs(expr.arguments()));
+            return node;
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            var node = this.node(GROUPING_EXPR, 1);
+            this.set(node, 0, this.expr(expr.expression()));
+            return node;
+        }
+
+        @Override
+        public Integer visitIndexExpr(Expr.Index expr) {
+            var node = this.node(INDEX_EXPR, 3);
+            this.set(node, 0, this.expr(expr.object()));
+            this.set(node, 1, this.constant(expr.bracket()));
+            this.set(node, 2, this.expr(expr.index()));
+            return node;
+        }
+
+        @Override
+        public Integer visitIndexSetExpr(Expr.IndexSet expr) {
+            var node = this.node(INDEX_SET_EXPR, 4);
+            this.set(node, 0, this.expr(expr.object()));
+            this.set(node, 1, this.constant(expr.bracket()));
+            this.set(node, 2, this.expr(expr.index()));
+            this.set(node, 3, this.expr(expr.value()));
+            return node;
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            var node = this.node(LITERAL_EXPR, 1);
+            this.set(node, 0, this.constant(expr.value()));
+            return node;
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            var node = this.node(LOGICAL_EXPR, 3);
+            this.set(node, 0, this.expr(expr.left()));
+            this.set(node, 1, this.constant(expr.operator()));
+            this.set(node, 2, this.expr(expr.right()));
+            return node;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            var node = this.node(UNARY_EXPR, 2);
+            this.set(node, 0, this.constant(expr.operator()));
+            this.set(node, 1, this.expr(expr.right()));
+            return node;
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            var node = this.node(VARIABLE_EXPR, 1);
+            this.set(node, 0, this.constant(expr.name()));
+            return node;
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            var node = this.node(BLOCK_STMT, 1);
+            this.set(node, 0, this.stmts(stmt.statements()));
+            return node;
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            var node = this.node(EXPRESSION_STMT, 1);
+            this.set(node, 0, this.expr(stmt.expression()));
+            return node;
+        }
+
+        @Override
+        public Integer visitForStmt(Stmt.For stmt) {
+            var node = this.node(FOR_STMT, 7);
+            this.set(node, 0, this.constant(stmt.name()));
+            this.set(node, 1, this.expr(stmt.start()));
+            this.set(node, 2, this.constant(stmt.operator()));
+            this.set(node, 3, this.expr(stmt.limit()));
+            this.set(node, 4, stmt.invariant() ? 1 : 0);
+            this.set(node, 5, this.constant(stmt.step()));
+            this.set(node, 6, this.stmts(stmt.body()));
+            return node;
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            var node = this.node(FUNCTION_STMT, 6);
+            this.set(node, 0, this.constant(stmt.name()));
+            this.set(node, 1, this.constant(stmt.params()));
+            this.set(node, 2, this.stmts(stmt.body()));
+            this.set(node, 3, this.constant(stmt.types()));
+            this.set(node, 4, this.constant(stmt.returnType()));
+            this.set(node, 5, this.constant(stmt));
+            return node;
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            var node = this.node(IF_STMT, 3);
+            this.set(node, 0, this.expr(stmt.condition()));
+            this.set(node, 1, this.stmt(stmt.thenBranch()));
+            this.set(node, 2, this.stmt(stmt.elseBranch()));
+            return node;
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            var node = this.node(PRINT_STMT, 1);
+            this.set(node, 0, this.expr(stmt.expression()));
+            return node;
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            var node = this.node(RETURN_STMT, 2);
+            this.set(node, 0, this.constant(stmt.keyword()));
+            this.set(node, 1, this.expr(stmt.value()));
+            return node;
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            var node = this.node(VAR_STMT, 3);
+            this.set(node, 0, this.constant(stmt.name()));
+            this.set(node, 1, this.expr(stmt.initializer()));
+            this.set(node, 2, this.constant(stmt.type()));
+            return node;
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            var node = this.node(WHILE_STMT, 2);
+            this.set(node, 0, this.expr(stmt.condition()));
+            this.set(node, 1, this.stmt(stmt.body()));
+            return node;
+        }
+
+        @Override
+        public Integer visitYieldStmt(Stmt.Yield stmt) {
+            var node = this.node(YIELD_STMT, 2);
+            this.set(node, 0, this.constant(stmt.keyword()));
+            this.set(node, 1, this.expr(stmt.value()));
+            return node;
+        }
+    }
+}
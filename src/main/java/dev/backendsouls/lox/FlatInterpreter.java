@@ -0,0 +1,343 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.backendsouls.lox.FlatAst.*;
+
+// Runs FlatAst code with the same semantics as the tree-walking Interpreter, which it belongs to:
+// callables still receive that interpreter, and a LoxFunction called from here comes back in
+// through Interpreter.executeFlat. Operand numbers follow the field order in tool/GenerateAst.
+//
+// Statements return true while a `return` unwinds, rather than throwing: the flat walker recurses
+// through a few large methods the JIT can't inline into each other, so a thrown Return would
+// really unwind frames on every call.
+final class FlatInterpreter {
+    private final Interpreter interpreter;
+
+    private FlatAst code;
+
+    private Environment environment;
+
+    private Object returnValue;
+
+    FlatInterpreter(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    // Returns the value of a `return`, or nil when the statements run to the end.
+    Object executeList(FlatAst code, int list, Environment environment) {
+        var previousCode = this.code;
+        var previousEnvironment = this.environment;
+
+        try {
+            this.code = code;
+            this.environment = environment;
+
+            if (!this.executeList(list)) {
+                return null;
+            }
+
+            var value = this.returnValue;
+            this.returnValue = null;
+
+            return value;
+        } finally {
+            this.code = previousCode;
+            this.environment = previousEnvironment;
+        }
+    }
+
+    private boolean executeList(int list) {
+        var operands = this.code.operands;
+        var count = operands[list];
+
+        for (var i = 1; i <= count; i++) {
+            if (this.execute(operands[list + i])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean executeScoped(int list, Environment environment) {
+        var previousEnvironment = this.environment;
+
+        try {
+            this.environment = environment;
+            return this.executeList(list);
+        } finally {
+            this.environment = previousEnvironment;
+        }
+    }
+
+    private boolean executeBlock(int list) {
+        var environment = this.interpreter.frame(this.environment);
+
+        try {
+            return this.executeScoped(list, environment);
+        } finally {
+            this.interpreter.release(environment);
+        }
+    }
+
+    private boolean execute(int node) {
+        var code = this.code;
+
+        return switch (code.kinds[node]) {
+            case BLOCK_STMT -> this.executeBlock(code.operand(node, 0));
+            case EXPRESSION_STMT -> {
+                this.evaluate(code.operand(node, 0));
+                yield false;
+            }
+            case FOR_STMT -> this.executeFor(node);
+            case FUNCTION_STMT -> this.executeFunction(node);
+            case IF_STMT -> this.executeIf(node);
+            case PRINT_STMT -> {
+                LoxRuntime.print(this.interpreter, this.evaluate(code.operand(node, 0)));
+                yield false;
+            }
+            case RETURN_STMT -> this.executeReturn(node);
+            case VAR_STMT -> this.executeVar(node);
+            case WHILE_STMT -> this.executeWhile(node);
+            case YIELD_STMT -> this.executeYield(node);
+            default -> throw new IllegalStateException("Not a statement: " + code.kinds[node]);
+        };
+    }
+
+    private boolean executeFunction(int node) {
+        var declaration = (Stmt.Function) this.code.constant(node, 5);
+        this.interpreter.charge(declaration.name(), Quota.CLOSURE);
+
+        var function = new LoxFunction(declaration, this.environment, this.code, this.code.operand(node, 2));
+        this.environment.define(declaration.name().lexeme(), function);
+        this.interpreter.declared(function);
+
+        return false;
+    }
+
+    private boolean executeIf(int node) {
+        var code = this.code;
+
+        if (LoxRuntime.isTruthy(this.evaluate(code.operand(node, 0)))) {
+            return this.execute(code.operand(node, 1));
+        }
+
+        return code.operand(node, 2) >= 0 && this.execute(code.operand(node, 2));
+    }
+
+    private boolean executeReturn(int node) {
+        var value = this.code.operand(node, 1);
+        this.returnValue = value >= 0 ? this.evaluate(value) : null;
+
+        return true;
+    }
+
+    private boolean executeYield(int node) {
+        var value = this.evaluate(this.code.operand(node, 1));
+        this.interpreter.yieldValue(this.code.token(node, 0), value);
+
+        return false;
+    }
+
+    private boolean executeVar(int node) {
+        var initializer = this.code.operand(node, 1);
+        var value = initializer >= 0 ? this.evaluate(initializer) : null;
+        var name = this.code.token(node, 0);
+        var type = this.code.token(node, 2);
+
+        if (type != null) {
+            value = LoxRuntime.checkType(name, type, value);
+        }
+
+        this.environment.define(name.lexeme(), value);
+
+        return false;
+    }
+
+    private boolean executeWhile(int node) {
+        var condition = this.code.operand(node, 0);
+        var body = this.code.operand(node, 1);
+
+        while (LoxRuntime.isTruthy(this.evaluate(condition))) {
+            if (this.execute(body)) {
+                return true;
+            }
+
+            this.interpreter.backEdges++;
+        }
+
+        return false;
+    }
+
+    // See Interpreter.visitForStmt.
+    private boolean executeFor(int node) {
+        var code = this.code;
+        var environment = this.interpreter.frame(this.environment);
+        var previousEnvironment = this.environment;
+        var name = code.token(node, 0).lexeme();
+        var operator = code.token(node, 2);
+        var limitNode = code.operand(node, 3);
+        var invariant = code.operand(node, 4) == 1;
+        var step = (double) code.constant(node, 5);
+        var body = code.operand(node, 6);
+
+        try {
+            this.environment = environment;
+
+            var start = this.evaluate(code.operand(node, 1));
+            environment.define(name, start);
+
+            var limit = this.evaluate(limitNode);
+
+            if (!(start instanceof Double) || !(limit instanceof Double)) {
+                LoxRuntime.less(operator, start, limit);
+            }
+
+            var index = (double) start;
+
+            while (Interpreter.compare(operator, index, invariant ? limit : this.evaluate(limitNode))) {
+                if (this.executeList(body)) {
+                    return true;
+                }
+
+                index += step;
+                environment.define(name, index);
+                this.interpreter.backEdges++;
+            }
+        } finally {
+            this.environment = previousEnvironment;
+            this.interpreter.release(environment);
+        }
+
+        return false;
+    }
+
+    // Every kind lives in a method of its own so that this dispatch stays small enough to inline.
+    private Object evaluate(int node) {
+        return switch (this.code.kinds[node]) {
+            case ASSIGN_EXPR -> this.assign(node);
+            case BINARY_EXPR -> this.binary(node);
+            case CALL_EXPR -> this.call(node);
+            case GROUPING_EXPR -> this.evaluate(this.code.operand(node, 0));
+            case INDEX_EXPR -> this.index(node);
+            case INDEX_SET_EXPR -> this.indexSet(node);
+            case LITERAL_EXPR -> this.code.constant(node, 0);
+            case LOGICAL_EXPR -> this.logical(node);
+            case UNARY_EXPR -> this.unary(node);
+            case VARIABLE_EXPR -> this.environment.get(this.code.token(node, 0));
+            default -> throw new IllegalStateException("Not an expression: " + this.code.kinds[node]);
+        };
+    }
+
+    private Object assign(int node) {
+        var value = this.evaluate(this.code.operand(node, 1));
+        this.environment.assign(this.code.token(node, 0), value);
+        return value;
+    }
+
+    private Object index(int node) {
+        var code = this.code;
+        var object = this.evaluate(code.operand(node, 0));
+        var index = this.evaluate(code.operand(node, 2));
+
+        return LoxRuntime.index(code.token(node, 1), object, index);
+    }
+
+    private Object indexSet(int node) {
+        var code = this.code;
+        var object = this.evaluate(code.operand(node, 0));
+        var index = this.evaluate(code.operand(node, 2));
+        var value = this.evaluate(code.operand(node, 3));
+
+        return this.interpreter.indexSet(code.token(node, 1), object, index, value);
+    }
+
+    private Object logical(int node) {
+        var code = this.code;
+        var left = this.evaluate(code.operand(node, 0));
+
+        if (code.token(node, 1).tokenType() == TokenType.OR) {
+            if (LoxRuntime.isTruthy(left)) {
+                return left;
+            }
+        } else {
+            if (!LoxRuntime.isTruthy(left)) {
+                return left;
+            }
+        }
+
+        return this.evaluate(code.operand(node, 2));
+    }
+
+    private Object unary(int node) {
+        var operator = this.code.token(node, 0);
+        var right = this.evaluate(this.code.operand(node, 1));
+
+        return switch (operator.tokenType()) {
+            case TokenType.BANG -> LoxRuntime.not(right);
+            case TokenType.MINUS -> LoxRuntime.negate(operator, right);
+            default -> null;
+        };
+    }
+
+    private Object binary(int node) {
+        var code = this.code;
+        var left = this.evaluate(code.operand(node, 0));
+        var right = this.evaluate(code.operand(node, 2));
+        var operator = code.token(node, 1);
+
+        return switch (operator.tokenType()) {
+            case TokenType.BANG_EQUAL -> LoxRuntime.notEqual(left, right);
+            case TokenType.EQUAL_EQUAL -> LoxRuntime.equal(left, right);
+            case TokenType.GREATER -> LoxRuntime.greater(operator, left, right);
+            case TokenType.GREATER_EQUAL -> LoxRuntime.greaterEqual(operator, left, right);
+            case TokenType.LESS -> LoxRuntime.less(operator, left, right);
+            case TokenType.LESS_EQUAL -> LoxRuntime.lessEqual(operator, left, right);
+            case TokenType.MINUS -> LoxRuntime.subtract(operator, left, right);
+            case TokenType.SLASH -> LoxRuntime.divide(operator, left, right);
+            case TokenType.STAR -> LoxRuntime.multiply(operator, left, right);
+            case TokenType.PLUS -> this.interpreter.add(operator, left, right);
+            default -> null;
+        };
+    }
+
+    private Object call(int node) {
+        var code = this.code;
+        var callee = this.evaluate(code.operand(node, 0));
+        var paren = code.token(node, 1);
+        var arguments = code.operand(node, 2);
+        var count = code.operands[arguments];
+
+        this.interpreter.enterCall(paren);
+        try {
+            return switch (count) {
+                case 0 -> LoxRuntime.checkCallable(paren, callee, 0).call0(this.interpreter);
+                case 1 -> {
+                    var argument = this.evaluate(code.operands[arguments + 1]);
+                    yield LoxRuntime.checkCallable(paren, callee, 1).call1(this.interpreter, argument);
+                }
+                case 2 -> {
+                    var first = this.evaluate(code.operands[arguments + 1]);
+                    var second = this.evaluate(code.operands[arguments + 2]);
+                    yield LoxRuntime.checkCallable(paren, callee, 2).call2(this.interpreter, first, second);
+                }
+                default -> {
+                    List<Object> values = new ArrayList<>(count);
+                    for (var i = 1; i <= count; i++) {
+                        values.add(this.evaluate(code.operands[arguments + i]));
+                    }
+
+                    yield LoxRuntime.checkCallable(paren, callee, count).call(this.interpreter, values);
+                }
+            };
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            this.interpreter.exitCall();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// Keeps a parsed document up to date under text edits. The source is cut into chunks, one per
+// top-level declaration (see SourceSplitter), each scanned and parsed on its own. An edit only
+// re-splits the chunks it touches, up to the first old boundary the new text agrees with again;
+// every other chunk keeps its statements. Tokens count their lines from their chunk's origin, so an
+// edit that adds or removes lines moves the chunks after it without reparsing them. New chunks are
+// parsed the next time statements() is asked for.
+//
+// The statements of all parsed chunks are kept joined in one list, which edits splice rather than
+// rebuild. Errors go to the caller's reporter when a chunk is parsed. A chunk with errors isn't
+// kept, so every statements() reports them again until an edit fixes them.
+public class IncrementalParser {
+    private static final class Chunk {
+        int start;
+        int end;
+        final Token.Origin origin;
+        // Null until parsed cleanly.
+        List<Stmt> statements;
+
+        Chunk(int start, int end, int line) {
+            this.start = start;
+            this.end = end;
+            this.origin = new Token.Origin(line);
+        }
+
+        int size() {
+            return this.statements == null ? 0 : this.statements.size();
+        }
+    }
+
+    private final StringBuilder source;
+
+    private final ErrorReporter reporter;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    // The statements of every chunk parsed cleanly, in order.
+    private final List<Stmt> statements = new ArrayList<>();
+
+    private final List<Stmt> view = Collections.unmodifiableList(this.statements);
+
+    public IncrementalParser(String source, ErrorReporter reporter) {
+        this.source = new StringBuilder(source);
+        this.reporter = reporter;
+        this.chunks.addAll(this.split(0, 1, 0, 0, 0));
+    }
+
+    public String source() {
+        return this.source.toString();
+    }
+
+    public List<Stmt> statements() {
+        var index = 0;
+        IdentityHashMap<Chunk, List<Stmt>> failed = null;
+
+        for (var chunk : this.chunks) {
+            if (chunk.statements == null) {
+                var statements = this.parse(chunk);
+
+                if (chunk.statements == null) {
+                    if (failed == null) {
+                        failed = new IdentityHashMap<>();
+                    }
+
+                    failed.put(chunk, statements);
+                    continue;
+                }
+
+                this.statements.addAll(index, statements);
+            }
+
+            index += chunk.size();
+        }
+
+        if (failed == null) {
+            return this.view;
+        }
+
+        // Statements from chunks with errors only go into this result.
+        var statements = new ArrayList<Stmt>();
+        for (var chunk : this.chunks) {
+            statements.addAll(chunk.statements != null ? chunk.statements : failed.get(chunk));
+        }
+
+        return statements;
+    }
+
+    // Replaces length characters at offset with text.
+    public void edit(int offset, int length, String text) {
+        var lineDelta = count(text, '\n') - count(this.source.subSequence(offset, offset + length), '\n');
+        var delta = text.length() - length;
+
+        this.source.replace(offset, offset + length, text);
+
+        if (this.chunks.isEmpty()) {
+            this.chunks.addAll(this.split(0, 1, 0, 0, delta));
+            return;
+        }
+
+        // The first chunk touched is the one the edit starts in, or the one ending right at it, since
+        // deleting its terminator merges it with what follows.
+        var first = this.chunkEndingAtOrAfter(offset);
+        var last = this.chunkEndingAtOrAfter(offset + length);
+
+        var start = this.chunks.get(first).start;
+        var replacements = this.split(start, this.chunks.get(first).origin.line, offset + text.length(), last, delta);
+        var resynchronisedAt = replacements.isEmpty() ? start : replacements.getLast().end;
+
+        var next = last;
+        while (next < this.chunks.size() && this.chunks.get(next).end + delta <= resynchronisedAt) {
+            next++;
+        }
+
+        for (var i = next; i < this.chunks.size(); i++) {
+            var chunk = this.chunks.get(i);
+            chunk.start += delta;
+            chunk.end += delta;
+            chunk.origin.line += lineDelta;
+        }
+
+        var from = 0;
+        for (var i = 0; i < first; i++) {
+            from += this.chunks.get(i).size();
+        }
+
+        var to = from;
+        for (var i = first; i < next; i++) {
+            to += this.chunks.get(i).size();
+        }
+
+        this.statements.subList(from, to).clear();
+        this.chunks.subList(first, next).clear();
+        this.chunks.addAll(first, replacements);
+    }
+
+    // The single edit that turns the current source into source: everything between the longest
+    // common prefix and suffix.
+    public void replace(String source) {
+        var old = this.source;
+        var prefix = 0;
+        var limit = Math.min(old.length(), source.length());
+
+        while (prefix < limit && old.charAt(prefix) == source.charAt(prefix)) {
+            prefix++;
+        }
+
+        var suffix = 0;
+        while (suffix < limit - prefix
+                && old.charAt(old.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix)) {
+            suffix++;
+        }
+
+        if (prefix < old.length() - suffix || prefix < source.length() - suffix) {
+            this.edit(prefix, old.length() - suffix - prefix, source.substring(prefix, source.length() - suffix));
+        }
+    }
+
+    private int chunkEndingAtOrAfter(int offset) {
+        var low = 0;
+        var high = this.chunks.size() - 1;
+
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+
+            if (this.chunks.get(middle).end < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    // Cuts chunks from start onwards. Once past minimumEnd, stops at the first boundary that matches
+    // the (shifted) end of an old chunk from index stopFrom on; with no chunks yet, runs to the end.
+    private List<Chunk> split(int start, int line, int minimumEnd, int stopFrom, int delta) {
+        var chunks = new ArrayList<Chunk>();
+        var stop = stopFrom;
+
+        while (start < this.source.length()) {
+            var end = SourceSplitter.declarationEnd(this.source, start);
+            chunks.add(new Chunk(start, end, line));
+
+            line += count(this.source.subSequence(start, end), '\n');
+            start = end;
+
+            if (end >= minimumEnd) {
+                while (stop < this.chunks.size() && this.chunks.get(stop).end + delta < end) {
+                    stop++;
+                }
+
+                if (stop < this.chunks.size() && this.chunks.get(stop).end + delta == end) {
+                    break;
+                }
+            }
+        }
+
+        return chunks;
+    }
+
+    private List<Stmt> parse(Chunk chunk) {
+        if (chunk.statements != null) {
+            return chunk.statements;
+        }
+
+        var text = this.source.substring(chunk.start, chunk.end);
+        var scanner = new Scanner(text, chunk.origin, this.reporter);
+        var parser = new Parser(scanner.scanTokens(), this.reporter);
+        var statements = parser.parse();
+
+        if (!scanner.failed() && !parser.failed()) {
+            chunk.statements = statements;
+        }
+
+        return statements;
+    }
+
+    private static int count(CharSequence text, char c) {
+        var count = 0;
+
+        for (var i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
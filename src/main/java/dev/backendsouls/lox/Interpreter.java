@@ -1,47 +1,145 @@
 package dev.backendsouls.lox;
 
+import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    private final Environment globals = new Environment();
-    private Environment environment = this.globals;
+    // Walk the flattened form of the AST (FlatAst) instead of the records.
+    static final boolean FLAT = Boolean.getBoolean("jlox.flat");
+
+    private static final int MAX_POOLED_FRAMES = 64;
+
+    // How evaluate and execute reach the visit methods: through accept (the default), a tableswitch
+    // over node tags, or a pattern switch over the sealed node types. See tool/DispatchBenchmark.
+    private static final String DISPATCH = System.getProperty("jlox.dispatch", "visitor");
+
+    private static final boolean TAGS = DISPATCH.equals("tags");
+
+    private static final boolean PATTERNS = DISPATCH.equals("patterns");
+
+    private final Environment globals;
+    private final ErrorReporter reporter;
+    private final PrintStream out;
+    private Environment environment;
+    private final FlatInterpreter flat = new FlatInterpreter(this);
+
+    // Loop iterations run by the function currently executing; see LoxFunction.execute.
+    int backEdges = 0;
+
+    // Calls currently on this interpreter's stack; see enterCall.
+    private int depth = 0;
+
+    private Profile profile;
+
+    private final Quota quota;
+
+    // Set on the interpreter that runs a generator's body; see LoxGenerator.
+    private LoxGenerator.Coroutine generator;
+
+    // Frames of finished blocks and calls that no closure captured, ready for reuse.
+    private final ArrayDeque<Environment> frames = new ArrayDeque<>();
 
     public Interpreter() {
-        this.globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+        this(Lox.reporter(), System.out);
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000.0;
-            }
+    public Interpreter(ErrorReporter reporter, PrintStream out) {
+        this(new Environment(), reporter, out);
+        Natives.define(this.globals);
+    }
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+    // Starts on top of a prelude, which already holds the natives.
+    public Interpreter(Prelude prelude, ErrorReporter reporter, PrintStream out) {
+        this(new Environment(prelude), reporter, out);
+    }
+
+    // A worker for parallel code: same globals, output and quota, its own frames.
+    Interpreter(Interpreter parent) {
+        this(parent.globals, parent.reporter, parent.out, parent.quota);
+        this.profile = parent.profile;
+    }
+
+    // Resumes from globals that already hold the natives, e.g. ones restored from a snapshot.
+    public Interpreter(Environment globals, ErrorReporter reporter, PrintStream out) {
+        this(globals, reporter, out, Quota.create());
+    }
+
+    private Interpreter(Environment globals, ErrorReporter reporter, PrintStream out, Quota quota) {
+        this.globals = globals;
+        this.environment = globals;
+        this.reporter = reporter;
+        this.out = out;
+        this.quota = quota;
     }
 
     public Environment globals() {
         return this.globals;
     }
 
+    public PrintStream out() {
+        return this.out;
+    }
+
+    void profile(Profile profile) {
+        this.profile = profile;
+    }
+
+    // Functions that got hot in an earlier run are compiled as soon as they are declared.
+    void declared(LoxFunction function) {
+        if (this.profile != null && this.profile.wasHot(function.declaration())) {
+            function.warm(this);
+        }
+    }
+
+    // Compiled code doesn't charge its allocations, so scripts under a quota stay interpreted.
+    boolean isCompilable() {
+        return this.quota == null;
+    }
+
+    void generator(LoxGenerator.Coroutine generator) {
+        this.generator = generator;
+    }
+
+    void yieldValue(Token keyword, Object value) {
+        if (this.generator == null) {
+            throw new RuntimeError(keyword, "Can only yield inside a generator.");
+        }
+
+        this.generator.yield(value);
+    }
+
+    void compiled(LoxFunction function) {
+        if (this.profile != null) {
+            this.profile.hot(function.declaration());
+        }
+    }
+
     public void interpret(List<Stmt> statements) {
         try {
+            if (FLAT) {
+                var code = FlatAst.of(statements);
+                this.flat.executeList(code, code.root, this.environment);
+                return;
+            }
+
             for (var statement : statements) {
                 this.execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            this.reporter.runtimeError(error);
         }
     }
 
     private void execute(Stmt statement) {
-        statement.accept(this);
+        if (TAGS) {
+            Stmt.dispatch(statement, this);
+        } else if (PATTERNS) {
+            Stmt.match(statement, this);
+        } else {
+            statement.accept(this);
+        }
     }
 
     @Override
@@ -53,74 +151,99 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        var right = this.evaluate(expr.right());
         var left = this.evaluate(expr.left());
-
-        return switch (expr.operator().tokenType()) {
-            case TokenType.BANG_EQUAL -> !this.isEqual(left, right);
-            case TokenType.EQUAL_EQUAL -> this.isEqual(left, right);
-            case TokenType.GREATER -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left > (double) right;
-            }
-            case TokenType.GREATER_EQUAL -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left >= (double) right;
-            }
-            case TokenType.LESS -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left < (double) right;
-            }
-            case TokenType.LESS_EQUAL -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left <= (double) right;
-            }
-            case TokenType.MINUS -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left - (double) right;
-            }
-            case TokenType.SLASH -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left / (double) right;
-            }
-            case TokenType.STAR -> {
-                this.checkNumberOperands(expr.operator(), left, right);
-                yield (double) left * (double) right;
-            }
-            case TokenType.PLUS -> {
-                if (left instanceof Double && right instanceof Double) {
-                    yield (double) left + (double) right;
-                }
-
-                if (left instanceof String && right instanceof String) {
-                    yield left + (String) right;
-                }
-
-                throw new RuntimeError(expr.operator(), "Operands must be two numbers or two strings.");
-            }
+        var right = this.evaluate(expr.right());
+        var operator = expr.operator();
+
+        return switch (operator.tokenType()) {
+            case TokenType.BANG_EQUAL -> LoxRuntime.notEqual(left, right);
+            case TokenType.EQUAL_EQUAL -> LoxRuntime.equal(left, right);
+            case TokenType.GREATER -> LoxRuntime.greater(operator, left, right);
+            case TokenType.GREATER_EQUAL -> LoxRuntime.greaterEqual(operator, left, right);
+            case TokenType.LESS -> LoxRuntime.less(operator, left, right);
+            case TokenType.LESS_EQUAL -> LoxRuntime.lessEqual(operator, left, right);
+            case TokenType.MINUS -> LoxRuntime.subtract(operator, left, right);
+            case TokenType.SLASH -> LoxRuntime.divide(operator, left, right);
+            case TokenType.STAR -> LoxRuntime.multiply(operator, left, right);
+            case TokenType.PLUS -> this.add(operator, left, right);
             default -> null;
         };
     }
 
+    Object add(Token operator, Object left, Object right) {
+        if (this.quota != null && left instanceof String first && right instanceof String second) {
+            this.charge(operator, Quota.string(first.length() + second.length()));
+        }
+
+        return LoxRuntime.add(operator, left, right);
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         var callee = this.evaluate(expr.callee());
+        var arguments = expr.arguments();
 
-        var arguments = new ArrayList<Object>();
-        for (var argument : expr.arguments()) {
-            arguments.add(this.evaluate(argument));
+        this.enterCall(expr.paren());
+        try {
+            return switch (arguments.size()) {
+                case 0 -> LoxRuntime.checkCallable(expr.paren(), callee, 0).call0(this);
+                case 1 -> {
+                    var argument = this.evaluate(arguments.get(0));
+                    yield LoxRuntime.checkCallable(expr.paren(), callee, 1).call1(this, argument);
+                }
+                case 2 -> {
+                    var first = this.evaluate(arguments.get(0));
+                    var second = this.evaluate(arguments.get(1));
+                    yield LoxRuntime.checkCallable(expr.paren(), callee, 2).call2(this, first, second);
+                }
+                default -> {
+                    var values = new ArrayList<Object>(arguments.size());
+                    for (var argument : arguments) {
+                        values.add(this.evaluate(argument));
+                    }
+
+                    yield LoxRuntime.checkCallable(expr.paren(), callee, values.size()).call(this, values);
+                }
+            };
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren(), error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(expr.paren(), "Stack overflow.");
+        } finally {
+            this.exitCall();
         }
+    }
 
-        if (!(callee instanceof LoxCallable function)) {
-            throw new RuntimeError(expr.paren(), "Can only call functions and classes.");
+    // Deep recursion is a runtime error rather than a crash. Interpreted and compiled calls both
+    // count towards the limit, so where it hits doesn't depend on what has been compiled. A thread
+    // whose stack is too small for the limit runs out of Java stack first, and the nearest call
+    // turns that into the same error.
+    void enterCall(Token paren) {
+        this.charge(paren, Quota.FRAME);
+
+        if (++this.depth > Lox.MAX_DEPTH) {
+            this.exitCall();
+            throw new RuntimeError(paren, "Stack overflow.");
         }
+    }
 
-        if (arguments.size() != function.arity()) {
-            var message = "Expected " + function.arity() + " arguments but got " + arguments.size() + ".";
-            throw new RuntimeError(expr.paren(), message);
+    void exitCall() {
+        this.depth--;
+
+        if (this.quota != null) {
+            this.quota.release(Quota.FRAME);
         }
+    }
 
-        return function.call(this, arguments);
+    // Charges an allocation to the script's quota, if it has one; false once the quota is spent.
+    boolean tryCharge(long bytes) {
+        return this.quota == null || this.quota.charge(bytes);
+    }
+
+    void charge(Token where, long bytes) {
+        if (!this.tryCharge(bytes)) {
+            throw new RuntimeError(where, "Memory quota exceeded.");
+        }
     }
 
     @Override
@@ -128,6 +251,31 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return this.evaluate(expr.expression());
     }
 
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        var object = this.evaluate(expr.object());
+        var index = this.evaluate(expr.index());
+
+        return LoxRuntime.index(expr.bracket(), object, index);
+    }
+
+    @Override
+    public Object visitIndexSetExpr(Expr.IndexSet expr) {
+        var object = this.evaluate(expr.object());
+        var index = this.evaluate(expr.index());
+        var value = this.evaluate(expr.value());
+
+        return this.indexSet(expr.bracket(), object, index, value);
+    }
+
+    Object indexSet(Token bracket, Object object, Object index, Object value) {
+        if (this.quota != null && object instanceof LoxMap map && !map.containsKey(index)) {
+            this.charge(bracket, Quota.ENTRY);
+        }
+
+        return LoxRuntime.indexSet(bracket, object, index, value);
+    }
+
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value();
@@ -138,11 +286,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         var left = this.evaluate(expr.left());
 
         if (expr.operator().tokenType() == TokenType.OR) {
-            if (this.isTruthy(left)) {
+            if (LoxRuntime.isTruthy(left)) {
                 return left;
             }
         } else {
-            if (!this.isTruthy(left)) {
+            if (!LoxRuntime.isTruthy(left)) {
                 return left;
             }
         }
@@ -155,11 +303,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         var right = this.evaluate(expr.right());
 
         return switch (expr.operator().tokenType()) {
-            case TokenType.BANG -> !this.isTruthy(right);
-            case TokenType.MINUS -> {
-                this.checkNumberOperand(expr.operator(), right);
-                yield -(double) right;
-            }
+            case TokenType.BANG -> LoxRuntime.not(right);
+            case TokenType.MINUS -> LoxRuntime.negate(expr.operator(), right);
             default -> null;
         };
 
@@ -171,71 +316,51 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     private Object evaluate(Expr expr) {
-        return expr.accept(this);
-    }
-
-    private boolean isTruthy(Object object) {
-        if (object == null) {
-            return false;
+        if (TAGS) {
+            return Expr.dispatch(expr, this);
         }
 
-        if (object instanceof Boolean) {
-            return (boolean) object;
+        if (PATTERNS) {
+            return Expr.match(expr, this);
         }
 
-        return true;
+        return expr.accept(this);
     }
 
-    private boolean isEqual(Object left, Object right) {
-        if (left == null && right == null) {
-            return true;
-        }
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        var environment = this.frame(this.environment);
 
-        if (left == null) {
-            return false;
+        try {
+            this.executeBlock(stmt.statements(), environment);
+        } finally {
+            this.release(environment);
         }
 
-        return left.equals(right);
+        return null;
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) {
-            return;
-        }
+    // Most blocks and calls leave nothing behind that refers to their frame, so instead of
+    // allocating a fresh Environment and HashMap each time they reuse one from a finished scope.
+    Environment frame(Environment enclosing) {
+        var environment = this.frames.poll();
 
-        throw new RuntimeError(operator, "Operand must be a number.");
-    }
-
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) {
-            return;
+        if (environment == null) {
+            return new Environment(enclosing);
         }
 
-        throw new RuntimeError(operator, "Operands must be a numbers.");
+        environment.reset(enclosing);
+        return environment;
     }
 
-    private String stringify(Object object) {
-        if (object == null) {
-            return "nil";
-        }
-
-        if (object instanceof Double) {
-            var text = object.toString();
-
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-
-            return text;
+    void release(Environment environment) {
+        if (!environment.isCaptured() && this.frames.size() < MAX_POOLED_FRAMES) {
+            this.frames.push(environment);
         }
-
-        return object.toString();
     }
 
-    @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        this.executeBlock(stmt.statements(), new Environment(this.environment));
-        return null;
+    Object executeFlat(FlatAst code, int list, Environment environment) {
+        return this.flat.executeList(code, list, environment);
     }
 
     public void executeBlock(List<Stmt> statements, Environment environment) {
@@ -258,16 +383,70 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        var environment = this.frame(this.environment);
+        var previousEnvironment = this.environment;
+        var name = stmt.name().lexeme();
+
+        try {
+            this.environment = environment;
+
+            var start = this.evaluate(stmt.start());
+            environment.define(name, start);
+
+            var limit = this.evaluate(stmt.limit());
+
+            // Anything but numbers falls back to the generic comparison, which reports the error.
+            if (!(start instanceof Double) || !(limit instanceof Double)) {
+                LoxRuntime.less(stmt.operator(), start, limit);
+            }
+
+            var index = (double) start;
+
+            while (compare(stmt.operator(), index, stmt.invariant() ? limit : this.evaluate(stmt.limit()))) {
+                for (var statement : stmt.body()) {
+                    this.execute(statement);
+                }
+
+                index += stmt.step();
+                environment.define(name, index);
+                this.backEdges++;
+            }
+        } finally {
+            this.environment = previousEnvironment;
+            this.release(environment);
+        }
+
+        return null;
+    }
+
+    static boolean compare(Token operator, double index, Object limit) {
+        if (!(limit instanceof Double bound)) {
+            return LoxRuntime.isTruthy(LoxRuntime.less(operator, index, limit));
+        }
+
+        return switch (operator.tokenType()) {
+            case TokenType.LESS -> index < bound;
+            case TokenType.LESS_EQUAL -> index <= bound;
+            case TokenType.GREATER -> index > bound;
+            default -> index >= bound;
+        };
+    }
+
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
+        this.charge(stmt.name(), Quota.CLOSURE);
+
         var function = new LoxFunction(stmt, this.environment);
         this.environment.define(stmt.name().lexeme(), function);
+        this.declared(function);
         return null;
     }
 
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
-        if (this.isTruthy(this.evaluate(stmt.condition()))) {
+        if (LoxRuntime.isTruthy(this.evaluate(stmt.condition()))) {
             this.execute(stmt.thenBranch());
         } else if (stmt.elseBranch() != null) {
             this.execute(stmt.elseBranch());
@@ -279,7 +458,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         var value = this.evaluate(stmt.expression());
-        System.out.println(this.stringify(value));
+        LoxRuntime.print(this, value);
         return null;
     }
 
@@ -302,6 +481,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             value = this.evaluate(stmt.initializer());
         }
 
+        if (stmt.type() != null) {
+            value = LoxRuntime.checkType(stmt.name(), stmt.type(), value);
+        }
+
         this.environment.define(stmt.name().lexeme(), value);
 
         return null;
@@ -309,10 +492,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        while (this.isTruthy(this.evaluate(stmt.condition()))) {
+        while (LoxRuntime.isTruthy(this.evaluate(stmt.condition()))) {
             this.execute(stmt.body());
+            this.backEdges++;
         }
 
         return null;
     }
+
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        this.yieldValue(stmt.keyword(), this.evaluate(stmt.value()));
+        return null;
+    }
 }
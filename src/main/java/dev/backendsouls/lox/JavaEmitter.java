@@ -0,0 +1,950 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Translates a parsed script into the source of a single Java class: one static method per
+// top-level function plus run() for the top-level statements. Every Lox value is an Object and
+// operators go through LoxRuntime, so compiled code behaves exactly like the interpreter.
+// Locals live in Java locals, which is only sound while no closure can capture them, so
+// functions may only be declared at the top level.
+//
+// Locals and parameters annotated `num` are the exception to everything being an Object: they are
+// unboxed doubles, checked once where a value of unknown type enters them, and arithmetic between
+// them skips LoxRuntime. A function whose parameters and return are all `num` also gets a method
+// that takes and returns doubles, which direct calls with numeric arguments use (see TypeChecker).
+final class JavaEmitter implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+    private static final class Method {
+        final StringBuilder body = new StringBuilder();
+
+        // Innermost scope first; empty while emitting top-level statements.
+        final Deque<Map<String, String>> scopes = new ArrayDeque<>();
+
+        int temps = 0;
+
+        int indent = 2;
+
+        // Java locals holding unboxed doubles.
+        final Set<String> doubles = new HashSet<>();
+
+        final boolean function;
+
+        // The function being emitted, null for top-level code, and whether its method returns double.
+        final Stmt.Function declaration;
+
+        final boolean numeric;
+
+        // The index of the first top-level statement during which this code can run. Only the
+        // functions declared before it can be called directly.
+        int runsFrom = 0;
+
+        Method(Stmt.Function declaration) {
+            this.function = declaration != null;
+            this.declaration = declaration;
+            this.numeric = declaration != null && isNumeric(declaration);
+        }
+    }
+
+    private static final Set<TokenType> ARITHMETIC = Set.of(
+            TokenType.PLUS, TokenType.MINUS, TokenType.STAR, TokenType.SLASH
+    );
+
+    private static final Set<TokenType> COMPARISONS = Set.of(
+            TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL
+    );
+
+    private final String className;
+
+    private final StringBuilder constants = new StringBuilder();
+
+    private final StringBuilder methods = new StringBuilder();
+
+    private final Map<Object, String> literals = new HashMap<>();
+
+    // Top-level functions that are declared once and never reassigned, mapped to their method.
+    private final Map<String, Stmt.Function> directFunctions = new HashMap<>();
+
+    // Keyed by identity: a record's hashCode walks its whole body.
+    private final Map<Stmt.Function, String> methodNames = new IdentityHashMap<>();
+
+    private List<Stmt> statements = List.of();
+
+    // Where each top-level function is declared among the statements.
+    private final Map<Stmt.Function, Integer> positions = new IdentityHashMap<>();
+
+    // Natives a compiled script can't use, because they check a function's body and compiled
+    // functions have none to check; empty when compiling single functions for the JIT, whose
+    // globals stay Lox functions.
+    private Set<String> unsupportedNatives = Set.of();
+
+    private int names = 0;
+
+    private Method method;
+
+    JavaEmitter(String className) {
+        this.className = className;
+    }
+
+    String script(List<Stmt> statements) {
+        this.statements = statements;
+        this.collectDirectFunctions(statements);
+        this.unsupportedNatives = unsupportedNatives(statements);
+
+        this.method = new Method(null);
+        for (var i = 0; i < statements.size(); i++) {
+            this.method.runsFrom = i;
+            statements.get(i).accept(this);
+        }
+
+        this.methods.append("    public static void main(String[] args) throws InterruptedException {\n")
+                .append("        LoxRuntime.main(").append(this.className).append("::run);\n")
+                .append("    }\n\n")
+                .append("    public static void run(Interpreter interpreter) {\n")
+                .append(this.locals(this.method))
+                .append(this.method.body)
+                .append("    }\n");
+
+        return "import dev.backendsouls.lox.*;\n\n"
+                + "public final class " + this.className + " {\n"
+                + this.constants + "\n"
+                + this.methods
+                + "}\n";
+    }
+
+    // A single function as a class implementing CompiledFunction.Body, for the runtime tier. The
+    // class ends up hidden, so it must not need lambdas or nested classes of its own.
+    String function(String className, Stmt.Function declaration) {
+        var name = this.methodName(declaration);
+        this.emitFunction(name, declaration);
+
+        var arguments = new ArrayList<String>();
+        for (var i = 0; i < declaration.params().size(); i++) {
+            arguments.add("arguments[" + i + "]");
+        }
+
+        this.methods.append("    @Override\n")
+                .append("    public Object invoke(Interpreter interpreter, Object[] arguments) {\n")
+                .append("        return ").append(name).append("(interpreter").append(prefixed(arguments)).append(");\n")
+                .append("    }\n");
+
+        return "package dev.backendsouls.lox;\n\n"
+                + "public final class " + className + " implements CompiledFunction.Body {\n"
+                + this.constants + "\n"
+                + this.methods
+                + "}\n";
+    }
+
+    // Statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        this.line("{");
+        this.method.indent++;
+        this.method.scopes.push(new HashMap<>());
+
+        for (var statement : stmt.statements()) {
+            statement.accept(this);
+        }
+
+        this.method.scopes.pop();
+        this.method.indent--;
+        this.line("}");
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        // Storing to an unboxed local is a statement of its own, so the result isn't boxed.
+        if (stmt.expression() instanceof Expr.Assign assign && this.isNumeric(assign)) {
+            this.line(this.resolve(assign.name().lexeme()) + " = "
+                    + this.unboxed(assign.value(), "checkNumber", assign.name()) + ";");
+            return null;
+        }
+
+        this.line("discard = " + stmt.expression().accept(this) + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        this.line("{");
+        this.method.indent++;
+        this.method.scopes.push(new HashMap<>());
+
+        // With a numeric start and limit, the counter is a double and the test a plain comparison.
+        var numeric = this.isNumeric(stmt.start()) && this.isNumeric(stmt.limit());
+        var start = numeric ? this.numeric(stmt.start()) : stmt.start().accept(this);
+        var local = this.fresh("v_" + stmt.name().lexeme());
+        this.line((numeric ? "double " : "Object ") + local + " = " + start + ";");
+        this.method.scopes.peek().put(stmt.name().lexeme(), local);
+
+        if (numeric) {
+            this.method.doubles.add(local);
+        }
+
+        var limit = numeric ? this.numeric(stmt.limit()) : stmt.limit().accept(this);
+
+        if (stmt.invariant()) {
+            var hoisted = this.fresh("limit");
+            this.line((numeric ? "double " : "Object ") + hoisted + " = " + limit + ";");
+            limit = hoisted;
+        }
+
+        if (numeric) {
+            this.line("while (" + local + " " + stmt.operator().lexeme() + " " + limit + ") {");
+            this.method.indent++;
+
+            for (var statement : stmt.body()) {
+                statement.accept(this);
+            }
+
+            this.line(local + " += " + stmt.step() + ";");
+            this.method.indent--;
+            this.line("}");
+
+            this.method.scopes.pop();
+            this.method.indent--;
+            this.line("}");
+
+            return null;
+        }
+
+        var test = switch (stmt.operator().tokenType()) {
+            case TokenType.LESS -> "less";
+            case TokenType.LESS_EQUAL -> "lessEqual";
+            case TokenType.GREATER -> "greater";
+            default -> "greaterEqual";
+        };
+
+        this.line("while (LoxRuntime.isTruthy(LoxRuntime." + test + "(" + this.token(stmt.operator()) + ", " + local + ", " + limit + "))) {");
+        this.method.indent++;
+
+        for (var statement : stmt.body()) {
+            statement.accept(this);
+        }
+
+        // Passing the comparison means the counter is a number.
+        this.line(local + " = (double) " + local + " + " + stmt.step() + ";");
+        this.method.indent--;
+        this.line("}");
+
+        this.method.scopes.pop();
+        this.method.indent--;
+        this.line("}");
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        if (this.method.function || !this.method.scopes.isEmpty()) {
+            throw new CompileError(stmt.name(), "Closures aren't supported by the compiler.");
+        }
+
+        if (stmt.params().size() > 254) {
+            throw new CompileError(stmt.name(), "Can't compile functions with more than 254 parameters.");
+        }
+
+        var name = this.methodName(stmt);
+        this.emitFunction(name, stmt);
+
+        var arguments = new ArrayList<String>();
+        for (var i = 0; i < stmt.params().size(); i++) {
+            arguments.add("arguments[" + i + "]");
+        }
+
+        this.line("LoxRuntime.defineGlobal(interpreter, " + quote(stmt.name().lexeme()) + ", new CompiledFunction("
+                + quote(stmt.name().lexeme()) + ", " + stmt.params().size() + ", (caller, arguments) -> "
+                + name + "(caller" + prefixed(arguments) + ")));");
+
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        this.line("if (" + this.condition(stmt.condition()) + ") {");
+        this.nested(stmt.thenBranch());
+
+        if (stmt.elseBranch() != null) {
+            this.line("} else {");
+            this.nested(stmt.elseBranch());
+        }
+
+        this.line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        this.line("LoxRuntime.print(interpreter, " + stmt.expression().accept(this) + ");");
+        return null;
+    }
+
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        throw new CompileError(stmt.keyword(), "Generators aren't supported by the compiler.");
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (!this.method.function) {
+            throw new CompileError(stmt.keyword(), "Can't return from top-level code.");
+        }
+
+        // Wrapped in if (true) so that javac accepts dead Lox statements after a return.
+        this.line("if (true) return " + this.returnValue(stmt.value()) + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        var name = stmt.name().lexeme();
+
+        // The initializer is emitted first so that `var a = a;` still reads the outer a.
+        if (isNum(stmt.type()) && !this.method.scopes.isEmpty()) {
+            var value = this.unboxed(stmt.initializer(), "checkNumber", stmt.name());
+            var local = this.fresh("v_" + name);
+            this.line("double " + local + " = " + value + ";");
+            this.method.scopes.peek().put(name, local);
+            this.method.doubles.add(local);
+
+            return null;
+        }
+
+        var value = stmt.initializer() == null ? "null" : stmt.initializer().accept(this);
+
+        if (stmt.type() != null) {
+            value = "LoxRuntime.checkType(" + this.token(stmt.name()) + ", " + this.token(stmt.type()) + ", " + value + ")";
+        }
+
+        if (this.method.scopes.isEmpty()) {
+            this.line("LoxRuntime.defineGlobal(interpreter, " + quote(name) + ", " + value + ");");
+            return null;
+        }
+
+        var local = this.fresh("v_" + name);
+        this.line("Object " + local + " = " + value + ";");
+        this.method.scopes.peek().put(name, local);
+
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        this.line("while (" + this.condition(stmt.condition()) + ") {");
+        this.nested(stmt.body());
+        this.line("}");
+
+        return null;
+    }
+
+    // Expressions
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        var local = this.resolve(expr.name().lexeme());
+
+        if (local != null && this.method.doubles.contains(local)) {
+            return this.numeric(expr);
+        }
+
+        var value = expr.value().accept(this);
+
+        if (local != null) {
+            return "(" + local + " = " + value + ")";
+        }
+
+        return "LoxRuntime.assignGlobal(interpreter, " + this.token(expr.name()) + ", " + value + ")";
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        if (this.isNumeric(expr)) {
+            return this.numeric(expr);
+        }
+
+        if (this.isNumericComparison(expr)) {
+            return this.comparison(expr);
+        }
+
+        var left = expr.left().accept(this);
+        var right = expr.right().accept(this);
+        var operator = this.token(expr.operator());
+
+        return switch (expr.operator().tokenType()) {
+            case TokenType.BANG_EQUAL -> "LoxRuntime.notEqual(" + left + ", " + right + ")";
+            case TokenType.EQUAL_EQUAL -> "LoxRuntime.equal(" + left + ", " + right + ")";
+            case TokenType.GREATER -> "LoxRuntime.greater(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.GREATER_EQUAL -> "LoxRuntime.greaterEqual(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.LESS -> "LoxRuntime.less(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.LESS_EQUAL -> "LoxRuntime.lessEqual(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.MINUS -> "LoxRuntime.subtract(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.SLASH -> "LoxRuntime.divide(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.STAR -> "LoxRuntime.multiply(" + operator + ", " + left + ", " + right + ")";
+            case TokenType.PLUS -> "LoxRuntime.add(" + operator + ", " + left + ", " + right + ")";
+            default -> "null";
+        };
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        if (this.isNumeric(expr)) {
+            return this.numeric(expr);
+        }
+
+        var arguments = new ArrayList<String>();
+
+        var function = this.directFunction(expr);
+
+        if (function != null) {
+            for (var argument : expr.arguments()) {
+                arguments.add(argument.accept(this));
+            }
+
+            return counted(this.methodName(function)) + "(interpreter, " + this.token(expr.paren())
+                    + prefixed(arguments) + ")";
+        }
+
+        var callee = expr.callee().accept(this);
+        for (var argument : expr.arguments()) {
+            arguments.add(argument.accept(this));
+        }
+
+        var paren = this.token(expr.paren());
+
+        return switch (arguments.size()) {
+            case 0, 1, 2 -> "LoxRuntime.call" + arguments.size() + "(interpreter, " + paren + ", " + callee
+                    + prefixed(arguments) + ")";
+            default -> "LoxRuntime.call(interpreter, " + paren + ", " + callee + ", new Object[]{"
+                    + String.join(", ", arguments) + "})";
+        };
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return "(" + expr.expression().accept(this) + ")";
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return "LoxRuntime.index(" + this.token(expr.bracket()) + ", " + expr.object().accept(this) + ", "
+                + expr.index().accept(this) + ")";
+    }
+
+    @Override
+    public String visitIndexSetExpr(Expr.IndexSet expr) {
+        return "LoxRuntime.indexSet(" + this.token(expr.bracket()) + ", " + expr.object().accept(this) + ", "
+                + expr.index().accept(this) + ", " + expr.value().accept(this) + ")";
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        var value = expr.value();
+
+        if (value == null) {
+            return "null";
+        }
+
+        if (value instanceof Boolean bool) {
+            return bool ? "Boolean.TRUE" : "Boolean.FALSE";
+        }
+
+        // Numbers and strings are boxed once, in a constant, instead of on every evaluation.
+        return this.literals.computeIfAbsent(value, literal -> {
+            var name = "K" + this.literals.size();
+            var initializer = literal instanceof Double number ? Double.toString(number) : quote((String) literal);
+            this.constants.append("    private static final Object ").append(name).append(" = ")
+                    .append(initializer).append(";\n");
+            return name;
+        });
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        var left = expr.left().accept(this);
+        var right = expr.right().accept(this);
+        var temp = "t" + this.method.temps++;
+
+        if (expr.operator().tokenType() == TokenType.OR) {
+            return "(LoxRuntime.isTruthy(" + temp + " = " + left + ") ? " + temp + " : " + right + ")";
+        }
+
+        return "(!LoxRuntime.isTruthy(" + temp + " = " + left + ") ? " + temp + " : " + right + ")";
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        if (this.isNumeric(expr)) {
+            return this.numeric(expr);
+        }
+
+        var right = expr.right().accept(this);
+
+        return switch (expr.operator().tokenType()) {
+            case TokenType.BANG -> "LoxRuntime.not(" + right + ")";
+            case TokenType.MINUS -> "LoxRuntime.negate(" + this.token(expr.operator()) + ", " + right + ")";
+            default -> "null";
+        };
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        var local = this.resolve(expr.name().lexeme());
+
+        if (local != null) {
+            return local;
+        }
+
+        if (this.unsupportedNatives.contains(expr.name().lexeme())) {
+            throw new CompileError(expr.name(), "'" + expr.name().lexeme() + "' isn't supported by the compiler.");
+        }
+
+        return "LoxRuntime.getGlobal(interpreter, " + this.token(expr.name()) + ")";
+    }
+
+    // Helpers
+
+    private void emitFunction(String name, Stmt.Function stmt) {
+        var enclosing = this.method;
+        this.method = new Method(stmt);
+        this.method.runsFrom = this.runsFrom(stmt);
+
+        var scope = new HashMap<String, String>();
+        var params = new ArrayList<String>();
+        var arguments = new ArrayList<String>();
+        this.method.scopes.push(scope);
+
+        for (var i = 0; i < stmt.params().size(); i++) {
+            var param = stmt.params().get(i);
+            var type = stmt.types().get(i);
+            var local = this.fresh("v_" + param.lexeme());
+            scope.put(param.lexeme(), local);
+
+            if (this.method.numeric) {
+                params.add("double " + local);
+                arguments.add("LoxRuntime.checkNumber(" + this.token(param) + ", " + local + ")");
+                this.method.doubles.add(local);
+            } else if (isNum(type)) {
+                params.add("Object " + local);
+                var unboxed = this.fresh("v_" + param.lexeme());
+                this.line("double " + unboxed + " = LoxRuntime.checkNumber(" + this.token(param) + ", " + local + ");");
+                scope.put(param.lexeme(), unboxed);
+                this.method.doubles.add(unboxed);
+            } else {
+                params.add("Object " + local);
+
+                if (type != null) {
+                    this.line(local + " = LoxRuntime.checkType(" + this.token(param) + ", " + this.token(type) + ", " + local + ");");
+                }
+            }
+        }
+
+        for (var statement : stmt.body()) {
+            statement.accept(this);
+        }
+
+        this.methods.append("    static ").append(this.method.numeric ? "double " : "Object ")
+                .append(this.method.numeric ? numericName(name) : name).append("(Interpreter interpreter")
+                .append(prefixed(params)).append(") {\n")
+                .append(this.locals(this.method))
+                .append(this.method.body)
+                .append("        return ").append(this.returnValue(null)).append(";\n")
+                .append("    }\n\n");
+
+        // The boxed entry point everything but numeric direct calls goes through.
+        if (this.method.numeric) {
+            var boxed = new ArrayList<String>();
+            for (var param : params) {
+                boxed.add(param.replaceFirst("^double ", "Object "));
+            }
+
+            this.methods.append("    static Object ").append(name).append("(Interpreter interpreter")
+                    .append(prefixed(boxed)).append(") {\n")
+                    .append("        return ").append(numericName(name)).append("(interpreter")
+                    .append(prefixed(arguments)).append(");\n")
+                    .append("    }\n\n");
+
+            this.emitCounted("double", numericName(name), params);
+            this.emitCounted("Object", name, boxed);
+        } else {
+            this.emitCounted("Object", name, params);
+        }
+
+        this.method = enclosing;
+    }
+
+    // What direct calls go through: the method, counted against the call depth the way
+    // LoxRuntime's call helpers count calls to values.
+    private void emitCounted(String type, String name, List<String> params) {
+        var arguments = new ArrayList<String>();
+        for (var param : params) {
+            arguments.add(param.substring(param.indexOf(' ') + 1));
+        }
+
+        this.methods.append("    static ").append(type).append(" ").append(counted(name))
+                .append("(Interpreter interpreter, Token paren").append(prefixed(params)).append(") {\n")
+                .append("        LoxRuntime.enterCall(interpreter, paren);\n")
+                .append("        try {\n")
+                .append("            return ").append(name).append("(interpreter").append(prefixed(arguments))
+                .append(");\n")
+                .append("        } catch (StackOverflowError error) {\n")
+                .append("            throw new RuntimeError(paren, \"Stack overflow.\");\n")
+                .append("        } finally {\n")
+                .append("            LoxRuntime.exitCall(interpreter);\n")
+                .append("        }\n")
+                .append("    }\n\n");
+    }
+
+    private static String counted(String name) {
+        return name + "_call";
+    }
+
+    // What a return statement, or falling off the end of the body, gives back: value checked
+    // against the function's return type, if it has one.
+    private String returnValue(Expr value) {
+        var declaration = this.method.declaration;
+        var type = declaration.returnType();
+
+        if (isNum(type)) {
+            return this.unboxed(value, "checkNumberReturn", declaration.name());
+        }
+
+        var result = value == null ? "null" : value.accept(this);
+
+        if (type == null) {
+            return result;
+        }
+
+        return "LoxRuntime.checkReturn(" + this.token(declaration.name()) + ", " + this.token(type) + ", " + result + ")";
+    }
+
+    // Unboxed code
+
+    private static boolean isNum(Token type) {
+        return type != null && type.lexeme().equals("num");
+    }
+
+    private static boolean isNumeric(Stmt.Function function) {
+        if (!isNum(function.returnType())) {
+            return false;
+        }
+
+        for (var type : function.types()) {
+            if (!isNum(type)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String numericName(String name) {
+        return name + "_num";
+    }
+
+    // Whether expr can be emitted as a double without any check.
+    private boolean isNumeric(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal.value() instanceof Double;
+            case Expr.Variable variable -> this.method.doubles.contains(this.resolve(variable.name().lexeme()));
+            case Expr.Assign assign -> this.method.doubles.contains(this.resolve(assign.name().lexeme()));
+            case Expr.Grouping grouping -> this.isNumeric(grouping.expression());
+            case Expr.Unary unary -> unary.operator().tokenType() == TokenType.MINUS && this.isNumeric(unary.right());
+            case Expr.Binary binary -> ARITHMETIC.contains(binary.operator().tokenType())
+                    && this.isNumeric(binary.left()) && this.isNumeric(binary.right());
+            case Expr.Call call -> {
+                var function = this.directFunction(call);
+
+                if (function == null || !isNumeric(function)) {
+                    yield false;
+                }
+
+                for (var argument : call.arguments()) {
+                    if (!this.isNumeric(argument)) {
+                        yield false;
+                    }
+                }
+
+                yield true;
+            }
+            default -> false;
+        };
+    }
+
+    // expr as a Java double expression; only for expressions isNumeric accepts.
+    private String numeric(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal.value().toString();
+            case Expr.Variable variable -> this.resolve(variable.name().lexeme());
+            case Expr.Assign assign -> "(" + this.resolve(assign.name().lexeme()) + " = "
+                    + this.unboxed(assign.value(), "checkNumber", assign.name()) + ")";
+            case Expr.Grouping grouping -> "(" + this.numeric(grouping.expression()) + ")";
+            case Expr.Unary unary -> "(-" + this.numeric(unary.right()) + ")";
+            case Expr.Binary binary -> "(" + this.numeric(binary.left()) + " " + binary.operator().lexeme() + " "
+                    + this.numeric(binary.right()) + ")";
+            case Expr.Call call -> {
+                var arguments = new ArrayList<String>();
+                for (var argument : call.arguments()) {
+                    arguments.add(this.numeric(argument));
+                }
+
+                yield counted(numericName(this.methodName(this.directFunction(call)))) + "(interpreter, "
+                        + this.token(call.paren()) + prefixed(arguments) + ")";
+            }
+            default -> throw new IllegalArgumentException("Not numeric: " + expr);
+        };
+    }
+
+    // expr as a double: as is when it's numeric, otherwise through the runtime check, a LoxRuntime
+    // method taking the token to blame and the boxed value. A missing expr is nil, which fails it.
+    private String unboxed(Expr expr, String check, Token token) {
+        if (expr != null && this.isNumeric(expr)) {
+            return this.numeric(expr);
+        }
+
+        var value = expr == null ? "null" : expr.accept(this);
+        return "LoxRuntime." + check + "(" + this.token(token) + ", " + value + ")";
+    }
+
+    private boolean isNumericComparison(Expr expr) {
+        return expr instanceof Expr.Binary binary && COMPARISONS.contains(binary.operator().tokenType())
+                && this.isNumeric(binary.left()) && this.isNumeric(binary.right());
+    }
+
+    private String comparison(Expr.Binary expr) {
+        return "(" + this.numeric(expr.left()) + " " + expr.operator().lexeme() + " " + this.numeric(expr.right()) + ")";
+    }
+
+    // A test as a Java boolean.
+    private String condition(Expr expr) {
+        if (this.isNumericComparison(expr)) {
+            return this.comparison((Expr.Binary) expr);
+        }
+
+        return "LoxRuntime.isTruthy(" + expr.accept(this) + ")";
+    }
+
+    // The top-level function a call goes straight to, if it can.
+    private Stmt.Function directFunction(Expr.Call call) {
+        if (!(call.callee() instanceof Expr.Variable variable)) {
+            return null;
+        }
+
+        var function = this.directFunctions.get(variable.name().lexeme());
+
+        if (function == null || this.resolve(variable.name().lexeme()) != null
+                || function.params().size() != call.arguments().size()
+                || this.positions.get(function) >= this.method.runsFrom) {
+            return null;
+        }
+
+        return function;
+    }
+
+    // A function's body can only run once its declaration has and some later statement that isn't a
+    // declaration calls it, so by then every function declared before that statement is defined.
+    private int runsFrom(Stmt.Function function) {
+        var position = this.positions.get(function);
+        if (position == null) {
+            return 0;
+        }
+
+        for (var i = position + 1; i < this.statements.size(); i++) {
+            if (!(this.statements.get(i) instanceof Stmt.Function)) {
+                return i;
+            }
+        }
+
+        return this.statements.size();
+    }
+
+    private String locals(Method method) {
+        var locals = new StringBuilder("        Object discard;\n");
+
+        for (var i = 0; i < method.temps; i++) {
+            locals.append("        Object t").append(i).append(" = null;\n");
+        }
+
+        return locals.toString();
+    }
+
+    private void nested(Stmt statement) {
+        this.method.indent++;
+        statement.accept(this);
+        this.method.indent--;
+    }
+
+    private void line(String code) {
+        this.method.body.append("    ".repeat(this.method.indent)).append(code).append('\n');
+    }
+
+    private String resolve(String name) {
+        for (var scope : this.method.scopes) {
+            var local = scope.get(name);
+
+            if (local != null) {
+                return local;
+            }
+        }
+
+        return null;
+    }
+
+    private String fresh(String prefix) {
+        return prefix + "_" + this.names++;
+    }
+
+    private String methodName(Stmt.Function function) {
+        return this.methodNames.computeIfAbsent(function, f -> this.fresh("fn_" + f.name().lexeme()));
+    }
+
+    private String token(Token token) {
+        var name = "T" + this.names++;
+
+        this.constants.append("    private static final Token ").append(name)
+                .append(" = new Token(TokenType.").append(token.tokenType().name()).append(", ")
+                .append(quote(token.lexeme())).append(", null, ").append(token.line()).append(");\n");
+
+        return name;
+    }
+
+    private void collectDirectFunctions(List<Stmt> statements) {
+        var declared = new HashMap<String, Integer>();
+        var rebound = new HashSet<String>();
+
+        for (var i = 0; i < statements.size(); i++) {
+            var statement = statements.get(i);
+
+            if (statement instanceof Stmt.Function function) {
+                this.positions.put(function, i);
+                declared.merge(function.name().lexeme(), 1, Integer::sum);
+                this.directFunctions.put(function.name().lexeme(), function);
+            } else if (statement instanceof Stmt.Var var) {
+                rebound.add(var.name().lexeme());
+            }
+
+            assignedNames(statement, rebound);
+        }
+
+        this.directFunctions.keySet().removeIf(name -> declared.get(name) > 1 || rebound.contains(name));
+    }
+
+    // memoize, parallelMap and spawn, unless the script declares a global of the same name.
+    private static Set<String> unsupportedNatives(List<Stmt> statements) {
+        var names = new HashSet<>(Set.of("memoize", "parallelMap", "spawn"));
+
+        for (var statement : statements) {
+            switch (statement) {
+                case Stmt.Function function -> names.remove(function.name().lexeme());
+                case Stmt.Var var -> names.remove(var.name().lexeme());
+                default -> {
+                }
+            }
+        }
+
+        return names;
+    }
+
+    // Bodies that lazy parsing hasn't reached are left unparsed, and so unsearched.
+    static void assignedNames(Object node, Set<String> names) {
+        switch (node) {
+            case Expr.Assign expr -> {
+                names.add(expr.name().lexeme());
+                assignedNames(expr.value(), names);
+            }
+            case Expr.Binary expr -> {
+                assignedNames(expr.left(), names);
+                assignedNames(expr.right(), names);
+            }
+            case Expr.Call expr -> {
+                assignedNames(expr.callee(), names);
+                expr.arguments().forEach(argument -> assignedNames(argument, names));
+            }
+            case Expr.Grouping expr -> assignedNames(expr.expression(), names);
+            case Expr.Index expr -> {
+                assignedNames(expr.object(), names);
+                assignedNames(expr.index(), names);
+            }
+            case Expr.IndexSet expr -> {
+                assignedNames(expr.object(), names);
+                assignedNames(expr.index(), names);
+                assignedNames(expr.value(), names);
+            }
+            case Expr.Logical expr -> {
+                assignedNames(expr.left(), names);
+                assignedNames(expr.right(), names);
+            }
+            case Expr.Unary expr -> assignedNames(expr.right(), names);
+            case Stmt.Block stmt -> stmt.statements().forEach(statement -> assignedNames(statement, names));
+            case Stmt.Expression stmt -> assignedNames(stmt.expression(), names);
+            case Stmt.For stmt -> {
+                assignedNames(stmt.start(), names);
+                assignedNames(stmt.limit(), names);
+                stmt.body().forEach(statement -> assignedNames(statement, names));
+            }
+            case Stmt.Function stmt -> {
+                if (TypeChecker.isParsed(stmt)) {
+                    stmt.body().forEach(statement -> assignedNames(statement, names));
+                }
+            }
+            case Stmt.If stmt -> {
+                assignedNames(stmt.condition(), names);
+                assignedNames(stmt.thenBranch(), names);
+                assignedNames(stmt.elseBranch(), names);
+            }
+            case Stmt.Print stmt -> assignedNames(stmt.expression(), names);
+            case Stmt.Return stmt -> assignedNames(stmt.value(), names);
+            case Stmt.Yield stmt -> assignedNames(stmt.value(), names);
+            case Stmt.Var stmt -> assignedNames(stmt.initializer(), names);
+            case Stmt.While stmt -> {
+                assignedNames(stmt.condition(), names);
+                assignedNames(stmt.body(), names);
+            }
+            case null, default -> {
+            }
+        }
+    }
+
+    private static String prefixed(List<String> values) {
+        var text = new StringBuilder();
+
+        for (var value : values) {
+            text.append(", ").append(value);
+        }
+
+        return text.toString();
+    }
+
+    static String quote(String text) {
+        var quoted = new StringBuilder("\"");
+
+        for (var i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < ' ') {
+                        quoted.append(String.format("\\%03o", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+}
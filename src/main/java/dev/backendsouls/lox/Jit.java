@@ -0,0 +1,62 @@
+package dev.backendsouls.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The second execution tier. Functions that get hot in the interpreter are compiled in the
+// background, through the same backend as --compile, into hidden classes; LoxFunction switches to
+// the compiled body once it is installed. Compiling never blocks the script.
+final class Jit {
+    // Invocations plus loop back-edges before a function is compiled.
+    static final int THRESHOLD = Integer.getInteger("jlox.jit.threshold", 10_000);
+
+    static final boolean ENABLED = !Boolean.getBoolean("jlox.jit.disable");
+
+    private static final boolean TRACE = Boolean.getBoolean("jlox.jit.trace");
+
+    private static final ExecutorService compiler = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "jlox-jit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static int classes = 0;
+
+    private Jit() {
+    }
+
+    static void submit(LoxFunction function) {
+        compiler.execute(() -> {
+            try {
+                function.install(compile(function.declaration()));
+                trace("compiled " + function);
+            } catch (CompileError error) {
+                // Not compilable (e.g. it declares closures); it simply stays interpreted.
+                trace("skipped " + function + ": " + error.getMessage());
+            }
+        });
+    }
+
+    private static CompiledFunction.Body compile(Stmt.Function declaration) {
+        var className = "JitFunction" + classes++;
+        var source = new JavaEmitter(className).function(className, declaration);
+        var bytes = Compiler.javac(className, source).get("dev.backendsouls.lox." + className);
+
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+
+            return (CompiledFunction.Body) constructor.invoke();
+        } catch (Throwable error) {
+            throw new CompileError(declaration.name(), "Can't load compiled function: " + error);
+        }
+    }
+
+    private static void trace(String message) {
+        if (TRACE) {
+            System.err.println("[jit] " + message);
+        }
+    }
+}
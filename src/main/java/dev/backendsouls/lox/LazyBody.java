@@ -0,0 +1,92 @@
+package dev.backendsouls.lox;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.function.Predicate;
+
+// A function body that the parser has only brace-matched. The statements are parsed from a copy of
+// the body's tokens the first time anything looks at them, which for most functions is their first
+// call and for many is never.
+//
+// Syntax errors inside the body are reported then, in the usual format, and the call that needed
+// the body fails instead of running half a function. So are the type errors found by the check
+// TypeChecker leaves on the body, which runs before anything can execute or compile it.
+final class LazyBody extends AbstractList<Stmt> {
+    private final Token name;
+
+    private final ErrorReporter reporter;
+
+    // The body's tokens followed by its closing brace; dropped once parsed.
+    private List<Token> tokens;
+
+    private volatile List<Stmt> statements;
+
+    // Whether the parsed statements pass, if anything needs to check them; see TypeChecker.
+    private Predicate<List<Stmt>> check;
+
+    // What was wrong with the body, once parsing it failed.
+    private String errors;
+
+    LazyBody(List<Token> tokens, Token name, ErrorReporter reporter) {
+        this.tokens = tokens;
+        this.name = name;
+        this.reporter = reporter;
+    }
+
+    boolean isParsed() {
+        return this.statements != null;
+    }
+
+    synchronized void check(Predicate<List<Stmt>> check) {
+        this.check = check;
+    }
+
+    @Override
+    public Stmt get(int index) {
+        return this.statements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return this.statements().size();
+    }
+
+    private List<Stmt> statements() {
+        var statements = this.statements;
+        return statements != null ? statements : this.parse();
+    }
+
+    private synchronized List<Stmt> parse() {
+        if (this.statements != null) {
+            return this.statements;
+        }
+
+        if (this.tokens == null) {
+            throw this.failure();
+        }
+
+        var parser = new Parser(this.tokens, 0, this.tokens.size() - 1, this.reporter, true);
+        var statements = parser.parse();
+        this.tokens = null;
+
+        if (parser.failed()) {
+            this.errors = "syntax";
+            throw this.failure();
+        }
+
+        statements = List.copyOf(statements);
+
+        if (this.check != null && !this.check.test(statements)) {
+            this.errors = "type";
+            throw this.failure();
+        }
+
+        this.check = null;
+        this.statements = statements;
+        return this.statements;
+    }
+
+    private RuntimeError failure() {
+        return new RuntimeError(this.name, "Function '" + this.name.lexeme() + "' has " + this.errors + " errors.");
+    }
+}
@@ -0,0 +1,193 @@
+package dev.backendsouls.lox;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Builds the tree for a `for` loop. Counted loops, `for (var i = a; i < b; i = i + c)` with a
+// numeric literal step and a body that never assigns i, become a Stmt.For: the interpreter keeps
+// i in a double, steps it without evaluating the increment, and evaluates b only once when nothing
+// in the body can change it. Everything else desugars into a while loop, as in the book.
+final class LoopOptimizer {
+    private static final Set<TokenType> COMPARISONS = Set.of(
+            TokenType.LESS, TokenType.LESS_EQUAL, TokenType.GREATER, TokenType.GREATER_EQUAL
+    );
+
+    private LoopOptimizer() {
+    }
+
+    static Stmt forLoop(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+        var counted = counted(initializer, condition, increment, body);
+
+        if (counted != null) {
+            return counted;
+        }
+
+        return desugar(initializer, condition, increment, body);
+    }
+
+    private static Stmt desugar(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+        if (increment != null) {
+            body = new Stmt.Block(Arrays.asList(
+                    body,
+                    new Stmt.Expression(increment)
+            ));
+        }
+
+        if (condition == null) {
+            condition = new Expr.Literal(true);
+        }
+
+        body = new Stmt.While(condition, body);
+
+        if (initializer != null) {
+            body = new Stmt.Block(Arrays.asList(
+                    initializer,
+                    body
+            ));
+        }
+
+        return body;
+    }
+
+    private static Stmt counted(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+        // A typed counter keeps the general form, where its declaration checks the annotation.
+        if (!(initializer instanceof Stmt.Var var) || var.initializer() == null || var.type() != null) {
+            return null;
+        }
+
+        var name = var.name().lexeme();
+
+        if (!(condition instanceof Expr.Binary test)
+                || !COMPARISONS.contains(test.operator().tokenType())
+                || !isVariable(test.left(), name)) {
+            return null;
+        }
+
+        if (!(increment instanceof Expr.Assign assign)
+                || !assign.name().lexeme().equals(name)
+                || !(assign.value() instanceof Expr.Binary step)
+                || !isVariable(step.left(), name)
+                || !(step.right() instanceof Expr.Literal literal)
+                || !(literal.value() instanceof Double amount)
+                || amount == 0) {
+            return null;
+        }
+
+        var delta = step.operator().tokenType() == TokenType.PLUS ? amount
+                : step.operator().tokenType() == TokenType.MINUS ? -amount
+                : 0;
+
+        if (delta == 0) {
+            return null;
+        }
+
+        var bodyEffects = new Effects();
+        bodyEffects.scan(body);
+
+        var limitEffects = new Effects();
+        limitEffects.scan(test.right());
+
+        if (bodyEffects.assigned.contains(name) || limitEffects.read.contains(name) || limitEffects.impure) {
+            return null;
+        }
+
+        // The limit is loop-invariant when the body can't write to anything it reads. A call
+        // could assign any variable in reach, so bodies with calls re-evaluate it every time.
+        var invariant = !bodyEffects.impure && limitEffects.read.stream().noneMatch(bodyEffects.assigned::contains);
+
+        return new Stmt.For(var.name(), var.initializer(), test.operator(), test.right(), invariant, delta, statements(body));
+    }
+
+    // A body block only needs an environment of its own when it declares something directly;
+    // otherwise its statements run in the loop's environment and no iteration allocates one.
+    private static List<Stmt> statements(Stmt body) {
+        if (body instanceof Stmt.Block block) {
+            for (var statement : block.statements()) {
+                if (statement instanceof Stmt.Var || statement instanceof Stmt.Function) {
+                    return List.of(body);
+                }
+            }
+
+            return block.statements();
+        }
+
+        return List.of(body);
+    }
+
+    private static boolean isVariable(Expr expr, String name) {
+        return expr instanceof Expr.Variable variable && variable.name().lexeme().equals(name);
+    }
+
+    // Names a tree reads and assigns, and whether it calls or stores into anything.
+    private static final class Effects {
+        private final Set<String> read = new HashSet<>();
+
+        private final Set<String> assigned = new HashSet<>();
+
+        private boolean impure = false;
+
+        private void scan(Object node) {
+            switch (node) {
+                case Expr.Assign expr -> {
+                    this.assigned.add(expr.name().lexeme());
+                    this.scan(expr.value());
+                }
+                case Expr.Binary expr -> {
+                    this.scan(expr.left());
+                    this.scan(expr.right());
+                }
+                case Expr.Call expr -> {
+                    this.impure = true;
+                    this.scan(expr.callee());
+                    expr.arguments().forEach(this::scan);
+                }
+                case Expr.Grouping expr -> this.scan(expr.expression());
+                case Expr.Index expr -> {
+                    this.scan(expr.object());
+                    this.scan(expr.index());
+                }
+                case Expr.IndexSet expr -> {
+                    this.impure = true;
+                    this.scan(expr.object());
+                    this.scan(expr.index());
+                    this.scan(expr.value());
+                }
+                case Expr.Logical expr -> {
+                    this.scan(expr.left());
+                    this.scan(expr.right());
+                }
+                case Expr.Unary expr -> this.scan(expr.right());
+                case Expr.Variable expr -> this.read.add(expr.name().lexeme());
+                case Stmt.Block stmt -> stmt.statements().forEach(this::scan);
+                case Stmt.Expression stmt -> this.scan(stmt.expression());
+                case Stmt.For stmt -> {
+                    this.assigned.add(stmt.name().lexeme());
+                    this.scan(stmt.start());
+                    this.scan(stmt.limit());
+                    stmt.body().forEach(this::scan);
+                }
+                case Stmt.Function stmt -> stmt.body().forEach(this::scan);
+                case Stmt.If stmt -> {
+                    this.scan(stmt.condition());
+                    this.scan(stmt.thenBranch());
+                    this.scan(stmt.elseBranch());
+                }
+                case Stmt.Print stmt -> this.scan(stmt.expression());
+                case Stmt.Return stmt -> this.scan(stmt.value());
+                case Stmt.Yield stmt -> this.scan(stmt.value());
+                case Stmt.Var stmt -> {
+                    this.assigned.add(stmt.name().lexeme());
+                    this.scan(stmt.initializer());
+                }
+                case Stmt.While stmt -> {
+                    this.scan(stmt.condition());
+                    this.scan(stmt.body());
+                }
+                case null, default -> {
+                }
+            }
+        }
+    }
+}
@@ -5,22 +5,73 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
+    // How deeply expressions and statements may nest, and calls recurse, before it's an error.
+    static final int MAX_DEPTH = Integer.getInteger("jlox.maxDepth", 100_000);
+
+    // The parser and interpreter recurse once per level of nesting, so they run on a thread whose
+    // stack is big enough for MAX_DEPTH, in megabytes. The OS only commits the pages actually touched.
+    static final long STACK_SIZE = Long.getLong("jlox.stackSize", 256) << 20;
+
+    // Where to keep the profile of hot functions between runs of a script; see Profile.
+    private static final String PROFILE = System.getProperty("jlox.profile");
+
+    private static final ErrorReporter reporter = new ErrorReporter(System.err);
+
+    public static void main(String[] args) throws Exception {
+        var failure = new IOException[1];
+
+        // Not a lambda: bootstrapping the first one would cost more than the rest of startup.
+        var thread = new Thread(null, null, "main", Lox.STACK_SIZE) {
+            @Override
+            public void run() {
+                try {
+                    Lox.start(args);
+                } catch (IOException error) {
+                    failure[0] = error;
+                }
+            }
+        };
+
+        thread.start();
+        thread.join();
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
 
-    private static boolean hadError = false;
+    private static void start(String[] args) throws IOException {
+        Prelude prelude = null;
 
-    private static boolean hadRuntimeError = false;
+        if (args.length >= 2 && args[0].equals("--prelude")) {
+            prelude = loadPrelude(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
 
-    public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        if (args.length == 3 && args[0].equals("--compile")) {
+            compileFile(args[1], args[2]);
+        } else if (args.length == 3 && args[0].equals("--snapshot")) {
+            snapshotFile(args[1], args[2]);
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("--restore")) {
+            restoreFile(args[1], args.length == 3 ? args[2] : null);
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("--batch")) {
+            System.exit(BatchRunner.run(Paths.get(args[1]), args.length == 3 ? Paths.get(args[2]) : null, prelude, System.out));
+        } else if (args.length == 2 && args[0].equals("--daemon")) {
+            Daemon.serve(Paths.get(args[1]), prelude);
+        } else if (args.length > 1) {
+            System.out.println("Usage: jlox [script] | jlox --compile <script> <output.jar | output directory>");
+            System.out.println("       jlox --snapshot <script> <image> | jlox --restore <image> [script]");
+            System.out.println("       jlox [--prelude <script>] --batch <directory | glob> [output directory]");
+            System.out.println("       jlox [--prelude <script>] --daemon <socket>");
             System.exit(64);
         } else if (args.length == 1) {
-            runFile(args[0]);
+            runFile(args[0], prelude != null ? new Interpreter(prelude, Lox.reporter, System.out) : new Interpreter());
         } else {
             runPrompt();
         }
@@ -29,67 +80,163 @@ public class Lox {
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
+        Session session = new Session(System.out, System.err);
 
         for (; ; ) {
-            System.out.println("> ");
+            System.out.println(session.isContinuation() ? "... " : "> ");
             String line = reader.readLine();
 
             if (line == null) {
                 break;
             }
 
-            run(line);
-            Lox.hadError = false;
+            if (line.startsWith(":save ")) {
+                session.save(Paths.get(line.substring(6).trim()));
+            } else if (line.startsWith(":load ")) {
+                session.restore(Paths.get(line.substring(6).trim()));
+            } else if (line.startsWith(":run ")) {
+                session.runFile(Paths.get(line.substring(5).trim()));
+            } else {
+                session.accept(line);
+            }
         }
     }
 
-    private static void runFile(String path) throws IOException {
+    private static void runFile(String path, Interpreter interpreter) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        var source = new String(bytes, Charset.defaultCharset());
+        var profile = PROFILE != null ? Profile.load(Paths.get(PROFILE), source) : null;
+
+        interpreter.profile(profile);
+        run(source, interpreter);
 
-        if (Lox.hadError) {
+        if (profile != null) {
+            profile.save();
+        }
+
+        if (Lox.reporter.hadError()) {
             System.exit(65);
         }
 
-        if (Lox.hadRuntimeError) {
+        if (Lox.reporter.hadRuntimeError()) {
             System.exit(70);
         }
     }
 
-    private static void run(String source) {
+    private static Prelude loadPrelude(String path) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        var prelude = Prelude.load(new String(bytes, Charset.defaultCharset()), Lox.reporter);
+
+        if (Lox.reporter.hadError()) {
+            System.exit(65);
+        }
+
+        if (Lox.reporter.hadRuntimeError()) {
+            System.exit(70);
+        }
+
+        return prelude;
+    }
+
+    // Runs a script and saves the globals it leaves behind, so --restore can start from them.
+    private static void snapshotFile(String path, String image) throws IOException {
+        var interpreter = new Interpreter();
+        runFile(path, interpreter);
+
+        try {
+            Snapshot.save(interpreter.globals(), Paths.get(image));
+        } catch (IllegalArgumentException error) {
+            System.err.println(error.getMessage());
+            System.exit(65);
+        }
+    }
+
+    private static void restoreFile(String image, String path) throws IOException {
+        var globals = Snapshot.load(Paths.get(image));
+        var interpreter = new Interpreter(globals, Lox.reporter, System.out);
+
+        if (path != null) {
+            runFile(path, interpreter);
+        }
+    }
+
+    private static void compileFile(String path, String output) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+
+        Scanner scanner = new Scanner(new String(bytes, Charset.defaultCharset()));
+        List<Stmt> statements = new Parser(scanner.scanTokens()).parse();
+
+        if (!Lox.reporter.hadError()) {
+            TypeChecker.check(statements, Lox.reporter);
+        }
+
+        if (Lox.reporter.hadError()) {
+            System.exit(65);
+        }
+
+        try {
+            var script = Compiler.compile(className(Paths.get(path)), statements);
+
+            if (output.endsWith(".jar")) {
+                script.writeJar(Paths.get(output));
+            } else {
+                script.writeClasses(Paths.get(output));
+            }
+        } catch (CompileError error) {
+            if (error.token != null) {
+                Lox.error(error.token, error.getMessage());
+            } else {
+                System.err.println(error.getMessage());
+            }
+
+            System.exit(65);
+        }
+    }
+
+    // fib.lox compiles to Fib, 07.lox to Script07.
+    private static String className(Path script) {
+        var name = script.getFileName().toString().replaceFirst("\\.lox$", "").replaceAll("[^A-Za-z0-9_]", "_");
+
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            name = "Script" + name;
+        }
+
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static void run(String source, Interpreter interpreter) {
         Scanner scanner = new Scanner(source);
         List<Token> tokens = scanner.scanTokens();
 
-        Parser parser = new Parser(tokens);
+        Parser parser = new Parser(tokens, Lox.reporter, Parser.LAZY);
         List<Stmt> statements = parser.parse();
 
-        if (Lox.hadError) {
+        if (Lox.reporter.hadError()) {
+            return;
+        }
+
+        TypeChecker.check(statements, Lox.reporter);
+
+        if (Lox.reporter.hadError()) {
             return;
         }
 
         interpreter.interpret(statements);
     }
 
+    static ErrorReporter reporter() {
+        return Lox.reporter;
+    }
+
     static void error(final int line, final String message) {
-        report(line, "", message);
+        Lox.reporter.error(line, message);
     }
 
     static void error(final Token token, final String message) {
-        if (token.tokenType() == TokenType.EOF) {
-            report(token.line(), " at end", message);
-            return;
-        }
-
-        report(token.line(), " at '" + token.lexeme() + "'", message);
+        Lox.reporter.error(token, message);
     }
 
     public static void runtimeError(RuntimeError error) {
-        Lox.hadRuntimeError = true;
-        System.err.println(error.getMessage() + "\n[line " + error.token.line() + "]");
-    }
-
-    private static void report(final int line, final String where, final String message) {
-        Lox.hadError = true;
-        System.err.println("[line " + line + "] Error " + where + ": " + message);
+        Lox.reporter.runtimeError(error);
     }
 }
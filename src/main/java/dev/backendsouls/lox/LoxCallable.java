@@ -1,9 +1,24 @@
 package dev.backendsouls.lox;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface LoxCallable {
     int arity();
 
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // Fixed-arity entry points used by the interpreter for the common small calls, so
+    // callables that override them never see an argument list.
+    default Object call0(Interpreter interpreter) {
+        return this.call(interpreter, List.of());
+    }
+
+    default Object call1(Interpreter interpreter, Object argument) {
+        return this.call(interpreter, Arrays.asList(argument));
+    }
+
+    default Object call2(Interpreter interpreter, Object first, Object second) {
+        return this.call(interpreter, Arrays.asList(first, second));
+    }
 }
@@ -0,0 +1,32 @@
+package dev.backendsouls.lox;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// An unbounded queue tasks use to pass values to each other: send never blocks, receive waits for
+// the next value.
+public class LoxChannel {
+    // The queue can't hold null, so nil travels boxed.
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    void send(Object value) {
+        this.queue.add(value == null ? NIL : value);
+    }
+
+    Object receive() {
+        try {
+            var value = this.queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while receiving.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -7,9 +7,52 @@ public class LoxFunction implements LoxCallable {
 
     private final Environment closure;
 
+    // Tiering state: the function runs in the interpreter until it has been invoked or looped
+    // Jit.THRESHOLD times, then runs the compiled body once the background compile installs it.
+    private int hotness = 0;
+
+    private boolean queued = !Jit.ENABLED;
+
+    private volatile CompiledFunction.Body compiled;
+
+    // The body in flattened form, when running with Interpreter.FLAT: functions declared by flat
+    // code share their parent's arrays, others flatten their own body on first call.
+    private FlatAst code;
+
+    private final int body;
+
+    // Whether the body yields, worked out on the first call so that lazy bodies stay unparsed until
+    // then: UNKNOWN, PLAIN or GENERATOR.
+    private byte kind = UNKNOWN;
+
+    private static final byte UNKNOWN = 0;
+
+    private static final byte PLAIN = 1;
+
+    private static final byte GENERATOR = 2;
+
+    private final boolean typedParams;
+
     public LoxFunction(final Stmt.Function declaration, Environment closure) {
+        this(declaration, closure, null, -1);
+    }
+
+    LoxFunction(final Stmt.Function declaration, Environment closure, FlatAst code, int body) {
         this.declaration = declaration;
         this.closure = closure;
+        this.code = code;
+        this.body = body;
+        this.typedParams = hasTypes(declaration.types());
+
+        closure.capture();
+    }
+
+    Stmt.Function declaration() {
+        return this.declaration;
+    }
+
+    Environment closure() {
+        return this.closure;
     }
 
     @Override
@@ -17,23 +60,187 @@ public class LoxFunction implements LoxCallable {
         return this.declaration.params().size();
     }
 
+    void install(CompiledFunction.Body compiled) {
+        this.compiled = compiled;
+    }
+
+    // Compiled code resolves free names through the caller's globals, which is only the same thing
+    // as this function's closure when it was declared at the top level of that interpreter.
+    private boolean isCompiledFor(Interpreter interpreter) {
+        return this.compiled != null && this.closure == interpreter.globals();
+    }
+
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        var names = this.declaration.params().iterator();
-        var values = arguments.iterator();
-        var environment = new Environment(this.closure);
+        if (this.isCompiledFor(interpreter)) {
+            return this.compiled.invoke(interpreter, arguments.toArray());
+        }
+
+        var params = this.declaration.params();
+        var environment = interpreter.frame(this.closure);
+
+        for (var i = 0; i < params.size(); i++) {
+            environment.define(params.get(i).lexeme(), arguments.get(i));
+        }
+
+        return this.start(interpreter, environment);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        if (this.isCompiledFor(interpreter)) {
+            return this.compiled.invoke(interpreter, new Object[0]);
+        }
+
+        return this.start(interpreter, interpreter.frame(this.closure));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object argument) {
+        if (this.isCompiledFor(interpreter)) {
+            return this.compiled.invoke(interpreter, new Object[]{argument});
+        }
+
+        var environment = interpreter.frame(this.closure);
+        environment.define(this.declaration.params().get(0).lexeme(), argument);
+
+        return this.start(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        if (this.isCompiledFor(interpreter)) {
+            return this.compiled.invoke(interpreter, new Object[]{first, second});
+        }
+
+        var params = this.declaration.params();
+        var environment = interpreter.frame(this.closure);
+        environment.define(params.get(0).lexeme(), first);
+        environment.define(params.get(1).lexeme(), second);
+
+        return this.start(interpreter, environment);
+    }
+
+    // A generator's frame outlives the call, so it goes to the generator instead of the body.
+    private Object start(Interpreter interpreter, Environment environment) {
+        if (this.typedParams) {
+            this.checkArguments(environment);
+        }
+
+        if (this.isGenerator()) {
+            environment.capture();
+            return new LoxGenerator(interpreter, this, environment);
+        }
+
+        return this.execute(interpreter, environment);
+    }
+
+    private static boolean hasTypes(List<Token> types) {
+        for (var type : types) {
+            if (type != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void checkArguments(Environment environment) {
+        var params = this.declaration.params();
+        var types = this.declaration.types();
+
+        for (var i = 0; i < params.size(); i++) {
+            if (types.get(i) != null) {
+                LoxRuntime.checkType(params.get(i), types.get(i), environment.get(params.get(i)));
+            }
+        }
+    }
+
+    private boolean isGenerator() {
+        if (this.kind == UNKNOWN) {
+            this.kind = yields(this.declaration.body()) ? GENERATOR : PLAIN;
+
+            // The compiler has no way to suspend a body.
+            this.queued |= this.kind == GENERATOR;
+        }
+
+        return this.kind == GENERATOR;
+    }
 
-        while (names.hasNext() && values.hasNext()) {
-            environment.define(names.next().lexeme(), values.next());
+    // Yields inside nested functions belong to those functions.
+    static boolean yields(List<Stmt> statements) {
+        for (var statement : statements) {
+            var found = switch (statement) {
+                case Stmt.Yield stmt -> true;
+                case Stmt.Block stmt -> yields(stmt.statements());
+                case Stmt.If stmt -> yields(List.of(stmt.thenBranch()))
+                        || stmt.elseBranch() != null && yields(List.of(stmt.elseBranch()));
+                case Stmt.While stmt -> yields(List.of(stmt.body()));
+                case Stmt.For stmt -> yields(stmt.body());
+                default -> false;
+            };
+
+            if (found) {
+                return true;
+            }
         }
 
+        return false;
+    }
+
+    Object execute(Interpreter interpreter, Environment environment) {
+        // Loops in this body count towards this function only, not towards its callers.
+        var callerBackEdges = interpreter.backEdges;
+        interpreter.backEdges = 0;
+        Object result = null;
+
         try {
-            interpreter.executeBlock(this.declaration.body(), environment);
+            if (Interpreter.FLAT) {
+                result = this.executeFlat(interpreter, environment);
+            } else {
+                interpreter.executeBlock(this.declaration.body(), environment);
+            }
         } catch (Return returnValue) {
-            return returnValue.value;
+            result = returnValue.value;
+        } finally {
+            interpreter.release(environment);
+            this.hotness += 1 + interpreter.backEdges;
+            interpreter.backEdges = callerBackEdges;
+
+            if (!this.queued && this.hotness >= Jit.THRESHOLD) {
+                this.compile(interpreter);
+            }
+        }
+
+        var returnType = this.declaration.returnType();
+        return returnType == null ? result : LoxRuntime.checkReturn(this.declaration.name(), returnType, result);
+    }
+
+    // Compiles ahead of the first call, for functions a profile says got hot last time.
+    void warm(Interpreter interpreter) {
+        if (!this.queued) {
+            this.compile(interpreter);
+        }
+    }
+
+    private void compile(Interpreter interpreter) {
+        this.queued = true;
+
+        if (this.closure == interpreter.globals() && interpreter.isCompilable()) {
+            Jit.submit(this);
+            interpreter.compiled(this);
+        }
+    }
+
+    private Object executeFlat(Interpreter interpreter, Environment environment) {
+        var code = this.code;
+
+        if (code == null) {
+            code = FlatAst.of(this.declaration.body());
+            this.code = code;
         }
 
-        return null;
+        return interpreter.executeFlat(code, this.body >= 0 ? this.body : code.root, environment);
     }
 
     @Override
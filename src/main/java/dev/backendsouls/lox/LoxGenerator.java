@@ -0,0 +1,221 @@
+package dev.backendsouls.lox;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+// What calling a generator function (one whose body yields) returns: a sequence whose values come
+// from running the body. The body runs on a virtual thread of its own, which serves as the suspended
+// frame: each yield hands its value to the consumer and parks until the next one is asked for, so
+// the body never runs ahead by more than one value. Like a task, it runs on a child interpreter over
+// the same globals. As with tasks, the body's call depth is bounded by the virtual thread's
+// stack, which -Xss sizes, not Lox.STACK_SIZE.
+//
+// Nothing runs until the first value is asked for. A generator closed before it finishes, by take()
+// or by becoming unreachable, interrupts its parked thread so the body unwinds and the thread ends.
+// Only the Coroutine is reachable from that thread, never the generator itself, which is what lets
+// a dropped generator become unreachable while its thread is still parked.
+public class LoxGenerator extends LoxSequence {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final LoxFunction function;
+
+    private final Coroutine coroutine;
+
+    private final Cleaner.Cleanable cleanable;
+
+    LoxGenerator(Interpreter parent, LoxFunction function, Environment environment) {
+        this.function = function;
+        this.coroutine = new Coroutine(parent, function, environment);
+        this.cleanable = CLEANER.register(this, this.coroutine::close);
+    }
+
+    @Override
+    boolean hasNext(Interpreter interpreter) {
+        return this.coroutine.hasNext();
+    }
+
+    @Override
+    Object next(Interpreter interpreter) {
+        return this.coroutine.next();
+    }
+
+    @Override
+    void close() {
+        this.cleanable.clean();
+    }
+
+    @Override
+    public String toString() {
+        return "<generator " + this.function.declaration().name().lexeme() + ">";
+    }
+
+    // The body's side of a generator, shared by the consumer and the generator's thread. Consumers
+    // take a ReentrantLock rather than the monitor: fetching blocks on the queues, and a virtual
+    // thread blocked inside a monitor pins its carrier, so a generator consuming another one could
+    // starve the scheduler of carriers.
+    static final class Coroutine {
+        // The queues can't hold null, so nil travels boxed.
+        private static final Object NIL = new Object();
+
+        private static final Object DONE = new Object();
+
+        private static final Object RESUME = new Object();
+
+        private record Failure(Throwable error) {
+        }
+
+        // Unwinds the body of a closed generator; only run() catches it.
+        private static final class Closed extends RuntimeException {
+            Closed() {
+                super(null, null, false, false);
+            }
+        }
+
+        private final Interpreter parent;
+
+        private final LoxFunction function;
+
+        private final Environment environment;
+
+        private final SynchronousQueue<Object> values = new SynchronousQueue<>();
+
+        private final SynchronousQueue<Object> resumes = new SynchronousQueue<>();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Null until the first value is asked for.
+        private Thread thread;
+
+        private boolean finished = false;
+
+        private volatile boolean closed = false;
+
+        // The value fetched by hasNext and not yet taken by next, boxed; null when there is none.
+        private Object pending;
+
+        private Coroutine(Interpreter parent, LoxFunction function, Environment environment) {
+            this.parent = parent;
+            this.function = function;
+            this.environment = environment;
+        }
+
+        boolean hasNext() {
+            this.lock.lock();
+
+            try {
+                if (this.pending == null && !this.finished) {
+                    this.fetch();
+                }
+
+                return this.pending != null;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        Object next() {
+            this.lock.lock();
+
+            try {
+                this.hasNext();
+
+                var value = this.pending;
+                this.pending = null;
+                return value == NIL ? null : value;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        // Called on the generator's own thread by the yield statement.
+        void yield(Object value) {
+            this.handOff(value == null ? NIL : value);
+
+            try {
+                this.resumes.take();
+            } catch (InterruptedException error) {
+                throw this.interrupted();
+            }
+        }
+
+        // Nobody is fetching while this runs, so an unfinished generator's thread is parked at a
+        // yield, where the interrupt ends it.
+        void close() {
+            this.lock.lock();
+
+            try {
+                if (this.thread != null && !this.finished) {
+                    this.closed = true;
+                    this.thread.interrupt();
+                }
+
+                this.finished = true;
+                this.pending = null;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void fetch() {
+            try {
+                if (this.thread != null) {
+                    this.resumes.put(RESUME);
+                } else {
+                    this.thread = Thread.ofVirtual().name("jlox-generator").start(this::run);
+                }
+
+                var value = this.values.take();
+
+                if (value == DONE) {
+                    this.finished = true;
+                } else if (value instanceof Failure failure) {
+                    this.finished = true;
+
+                    if (failure.error() instanceof RuntimeException error) {
+                        throw error;
+                    }
+
+                    throw new NativeError("Generator failed: " + failure.error());
+                } else {
+                    this.pending = value;
+                }
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+                throw new NativeError("Interrupted while waiting for a generator.");
+            }
+        }
+
+        private void run() {
+            var interpreter = new Interpreter(this.parent);
+            interpreter.generator(this);
+
+            try {
+                this.function.execute(interpreter, this.environment);
+                this.handOff(DONE);
+            } catch (Throwable error) {
+                // A closed generator has nobody left to hand anything to.
+                if (!this.closed) {
+                    this.handOff(new Failure(error));
+                }
+            }
+        }
+
+        private void handOff(Object value) {
+            try {
+                this.values.put(value);
+            } catch (InterruptedException error) {
+                throw this.interrupted();
+            }
+        }
+
+        private RuntimeException interrupted() {
+            if (this.closed) {
+                return new Closed();
+            }
+
+            Thread.currentThread().interrupt();
+            return new NativeError("Interrupted while yielding.");
+        }
+    }
+}
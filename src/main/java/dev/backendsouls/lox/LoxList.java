@@ -0,0 +1,119 @@
+package dev.backendsouls.lox;
+
+import java.util.Arrays;
+
+public class LoxList {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // While every element is a number the list lives in a primitive array, so storing never boxes.
+    // The first non-number stored spills the whole list into a regular object array.
+    private double[] numbers;
+    private Object[] objects;
+    private int size = 0;
+
+    // Set on lists a prelude defines, which every script started from it shares.
+    private boolean frozen = false;
+
+    public LoxList() {
+        this.numbers = new double[DEFAULT_CAPACITY];
+    }
+
+    public LoxList(int size, Object fill) {
+        this.size = size;
+
+        if (fill instanceof Double number) {
+            this.numbers = new double[Math.max(size, DEFAULT_CAPACITY)];
+            Arrays.fill(this.numbers, 0, size, number);
+        } else {
+            this.objects = new Object[Math.max(size, DEFAULT_CAPACITY)];
+            Arrays.fill(this.objects, 0, size, fill);
+        }
+    }
+
+    // Takes ownership of the array, which must hold at least size numbers.
+    LoxList(double[] numbers, int size) {
+        this.numbers = numbers.length < DEFAULT_CAPACITY ? Arrays.copyOf(numbers, DEFAULT_CAPACITY) : numbers;
+        this.size = size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    void freeze() {
+        this.frozen = true;
+    }
+
+    boolean isFrozen() {
+        return this.frozen;
+    }
+
+    public boolean isNumeric() {
+        return this.numbers != null;
+    }
+
+    public Object get(int index) {
+        if (this.numbers != null) {
+            return this.numbers[index];
+        }
+
+        return this.objects[index];
+    }
+
+    public void set(int index, Object value) {
+        if (this.numbers != null) {
+            if (value instanceof Double number) {
+                this.numbers[index] = number;
+                return;
+            }
+
+            this.spill();
+        }
+
+        this.objects[index] = value;
+    }
+
+    public void add(Object value) {
+        if (this.size == this.capacity()) {
+            this.grow();
+        }
+
+        this.size++;
+        this.set(this.size - 1, value);
+    }
+
+    public Object removeLast() {
+        var value = this.get(this.size - 1);
+
+        if (this.objects != null) {
+            this.objects[this.size - 1] = null;
+        }
+
+        this.size--;
+        return value;
+    }
+
+    private int capacity() {
+        return this.numbers != null ? this.numbers.length : this.objects.length;
+    }
+
+    private void grow() {
+        var capacity = Math.max(DEFAULT_CAPACITY, this.capacity() * 2);
+
+        if (this.numbers != null) {
+            this.numbers = Arrays.copyOf(this.numbers, capacity);
+        } else {
+            this.objects = Arrays.copyOf(this.objects, capacity);
+        }
+    }
+
+    private void spill() {
+        this.objects = new Object[this.numbers.length];
+
+        for (var i = 0; i < this.size; i++) {
+            this.objects[i] = this.numbers[i];
+        }
+
+        this.numbers = null;
+    }
+}
@@ -0,0 +1,147 @@
+package dev.backendsouls.lox;
+
+public class LoxMap {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // nil is a valid key, so empty slots and deleted slots need markers of their own.
+    private static final Object NIL_KEY = new Object();
+    private static final Object TOMBSTONE = new Object();
+
+    // Open addressing with linear probing: keys and values sit in two flat arrays instead of
+    // one entry object per mapping.
+    private Object[] keys = new Object[DEFAULT_CAPACITY];
+    private Object[] values = new Object[DEFAULT_CAPACITY];
+    private int size = 0;
+    private int used = 0;
+
+    // Set on maps a prelude defines, which every script started from it shares.
+    private boolean frozen = false;
+
+    public int size() {
+        return this.size;
+    }
+
+    void freeze() {
+        this.frozen = true;
+    }
+
+    boolean isFrozen() {
+        return this.frozen;
+    }
+
+    public Object get(Object key) {
+        var slot = this.find(mask(key));
+        return slot < 0 ? null : this.values[slot];
+    }
+
+    public boolean containsKey(Object key) {
+        return this.find(mask(key)) >= 0;
+    }
+
+    public void put(Object key, Object value) {
+        key = mask(key);
+
+        var slot = this.find(key);
+        if (slot >= 0) {
+            this.values[slot] = value;
+            return;
+        }
+
+        // Keep the table at most half full, tombstones included, so probe sequences stay short.
+        if ((this.used + 1) * 2 > this.keys.length) {
+            this.rehash(this.size * 4 >= this.keys.length ? this.keys.length * 2 : this.keys.length);
+        }
+
+        slot = this.insertionSlot(key);
+        if (this.keys[slot] == null) {
+            this.used++;
+        }
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+    }
+
+    public Object remove(Object key) {
+        var slot = this.find(mask(key));
+        if (slot < 0) {
+            return null;
+        }
+
+        var value = this.values[slot];
+        this.keys[slot] = TOMBSTONE;
+        this.values[slot] = null;
+        this.size--;
+
+        return value;
+    }
+
+    public LoxList keys() {
+        var keys = new LoxList();
+
+        for (var key : this.keys) {
+            if (key != null && key != TOMBSTONE) {
+                keys.add(key == NIL_KEY ? null : key);
+            }
+        }
+
+        return keys;
+    }
+
+    private int find(Object key) {
+        var mask = this.keys.length - 1;
+
+        for (var slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            var candidate = this.keys[slot];
+
+            if (candidate == null) {
+                return -1;
+            }
+
+            if (candidate != TOMBSTONE && candidate.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    private int insertionSlot(Object key) {
+        var mask = this.keys.length - 1;
+
+        for (var slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            var candidate = this.keys[slot];
+
+            if (candidate == null || candidate == TOMBSTONE) {
+                return slot;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        var oldKeys = this.keys;
+        var oldValues = this.values;
+
+        this.keys = new Object[capacity];
+        this.values = new Object[capacity];
+        this.used = this.size;
+
+        for (var i = 0; i < oldKeys.length; i++) {
+            var key = oldKeys[i];
+
+            if (key != null && key != TOMBSTONE) {
+                var slot = this.insertionSlot(key);
+                this.keys[slot] = key;
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static Object mask(Object key) {
+        return key == null ? NIL_KEY : key;
+    }
+
+    private static int hash(Object key) {
+        // The nil marker hashes to a constant so iteration order doesn't change from run to run.
+        var h = key == NIL_KEY ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
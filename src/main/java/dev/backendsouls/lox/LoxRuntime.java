@@ -0,0 +1,387 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+// Operator and call semantics shared by the tree-walking interpreter and compiled code.
+// Everything here is public because compiled classes live outside this package.
+public final class LoxRuntime {
+    private LoxRuntime() {
+    }
+
+    // Runs on a thread with the interpreter's stack size, so compiled scripts reach the same call
+    // depth before it's an error.
+    public static void main(Consumer<Interpreter> script) throws InterruptedException {
+        var thread = new Thread(null, () -> {
+            try {
+                script.accept(new Interpreter());
+            } catch (RuntimeError error) {
+                Lox.runtimeError(error);
+                System.exit(70);
+            }
+        }, "main", Lox.STACK_SIZE);
+
+        thread.start();
+        thread.join();
+    }
+
+    // Values
+
+    public static boolean isTruthy(Object object) {
+        if (object == null) {
+            return false;
+        }
+
+        if (object instanceof Boolean) {
+            return (boolean) object;
+        }
+
+        return true;
+    }
+
+    public static boolean isEqual(Object left, Object right) {
+        if (left == null && right == null) {
+            return true;
+        }
+
+        if (left == null) {
+            return false;
+        }
+
+        return left.equals(right);
+    }
+
+    public static String stringify(Object object) {
+        if (object == null) {
+            return "nil";
+        }
+
+        if (object instanceof Double) {
+            var text = object.toString();
+
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+
+            return text;
+        }
+
+        if (object instanceof LoxList list) {
+            var text = new StringBuilder("[");
+
+            for (var i = 0; i < list.size(); i++) {
+                text.append(i == 0 ? "" : ", ").append(stringify(list.get(i)));
+            }
+
+            return text.append("]").toString();
+        }
+
+        if (object instanceof LoxMap map) {
+            var text = new StringBuilder("{");
+            var keys = map.keys();
+
+            for (var i = 0; i < keys.size(); i++) {
+                var key = keys.get(i);
+                text.append(i == 0 ? "" : ", ").append(stringify(key))
+                        .append(": ").append(stringify(map.get(key)));
+            }
+
+            return text.append("}").toString();
+        }
+
+        return object.toString();
+    }
+
+    public static void print(Interpreter interpreter, Object value) {
+        interpreter.out().println(stringify(value));
+    }
+
+    // Operators
+
+    public static Object not(Object right) {
+        return !isTruthy(right);
+    }
+
+    public static Object negate(Token operator, Object right) {
+        checkNumberOperand(operator, right);
+        return -(double) right;
+    }
+
+    public static Object equal(Object left, Object right) {
+        return isEqual(left, right);
+    }
+
+    public static Object notEqual(Object left, Object right) {
+        return !isEqual(left, right);
+    }
+
+    public static Object greater(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left > (double) right;
+    }
+
+    public static Object greaterEqual(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left >= (double) right;
+    }
+
+    public static Object less(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left < (double) right;
+    }
+
+    public static Object lessEqual(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left <= (double) right;
+    }
+
+    public static Object subtract(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left - (double) right;
+    }
+
+    public static Object divide(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left / (double) right;
+    }
+
+    public static Object multiply(Token operator, Object left, Object right) {
+        checkNumberOperands(operator, left, right);
+        return (double) left * (double) right;
+    }
+
+    public static Object add(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double) left + (double) right;
+        }
+
+        if (left instanceof String && right instanceof String) {
+            return left + (String) right;
+        }
+
+        throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+    }
+
+    private static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) {
+            return;
+        }
+
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return;
+        }
+
+        throw new RuntimeError(operator, "Operands must be a numbers.");
+    }
+
+    // Types
+
+    // Names are validated by TypeChecker; one it never saw (in a lazily parsed body) accepts anything.
+    public static boolean hasType(Object value, String type) {
+        return switch (type) {
+            case "num" -> value instanceof Double;
+            case "str" -> value instanceof String;
+            case "bool" -> value instanceof Boolean;
+            case "list" -> value instanceof LoxList;
+            case "map" -> value instanceof LoxMap;
+            case "fn" -> value instanceof LoxCallable;
+            default -> true;
+        };
+    }
+
+    // A value entering a variable or parameter annotated with type.
+    public static Object checkType(Token name, Token type, Object value) {
+        if (hasType(value, type.lexeme())) {
+            return value;
+        }
+
+        throw new RuntimeError(name, "'" + name.lexeme() + "' must be " + type.lexeme() + ", got " + typeOf(value) + ".");
+    }
+
+    public static double checkNumber(Token name, Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+
+        throw new RuntimeError(name, "'" + name.lexeme() + "' must be num, got " + typeOf(value) + ".");
+    }
+
+    // A value returned by the function called name, whose return type is annotated.
+    public static Object checkReturn(Token name, Token type, Object value) {
+        if (hasType(value, type.lexeme())) {
+            return value;
+        }
+
+        throw new RuntimeError(name, "'" + name.lexeme() + "' must return " + type.lexeme() + ", got " + typeOf(value) + ".");
+    }
+
+    public static double checkNumberReturn(Token name, Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+
+        throw new RuntimeError(name, "'" + name.lexeme() + "' must return num, got " + typeOf(value) + ".");
+    }
+
+    private static String typeOf(Object value) {
+        return switch (value) {
+            case null -> "nil";
+            case Double number -> "num";
+            case String string -> "str";
+            case Boolean bool -> "bool";
+            case LoxList list -> "list";
+            case LoxMap map -> "map";
+            case LoxCallable callable -> "fn";
+            default -> stringify(value);
+        };
+    }
+
+    // Collections
+
+    public static Object index(Token bracket, Object object, Object index) {
+        if (object instanceof LoxList list) {
+            return list.get(checkListIndex(bracket, list, index));
+        }
+
+        if (object instanceof LoxMap map) {
+            return map.get(index);
+        }
+
+        throw new RuntimeError(bracket, "Can only index lists and maps.");
+    }
+
+    public static Object indexSet(Token bracket, Object object, Object index, Object value) {
+        if (object instanceof LoxList list) {
+            if (list.isFrozen()) {
+                throw new RuntimeError(bracket, "Can't modify a prelude list.");
+            }
+
+            list.set(checkListIndex(bracket, list, index), value);
+            return value;
+        }
+
+        if (object instanceof LoxMap map) {
+            if (map.isFrozen()) {
+                throw new RuntimeError(bracket, "Can't modify a prelude map.");
+            }
+
+            map.put(index, value);
+            return value;
+        }
+
+        throw new RuntimeError(bracket, "Can only index lists and maps.");
+    }
+
+    private static int checkListIndex(Token bracket, LoxList list, Object index) {
+        if (!(index instanceof Double number) || number != Math.floor(number)) {
+            throw new RuntimeError(bracket, "List index must be an integer.");
+        }
+
+        if (number < 0 || number >= list.size()) {
+            throw new RuntimeError(bracket, "List index out of range.");
+        }
+
+        return number.intValue();
+    }
+
+    // Variables
+
+    public static Object getGlobal(Interpreter interpreter, Token name) {
+        return interpreter.globals().get(name);
+    }
+
+    public static void defineGlobal(Interpreter interpreter, String name, Object value) {
+        interpreter.globals().define(name, value);
+    }
+
+    public static Object assignGlobal(Interpreter interpreter, Token name, Object value) {
+        interpreter.globals().assign(name, value);
+        return value;
+    }
+
+    // Calls
+
+    // Compiled calls count against the interpreter's depth limit just like interpreted ones; see
+    // Interpreter.enterCall.
+    public static void enterCall(Interpreter interpreter, Token paren) {
+        interpreter.enterCall(paren);
+    }
+
+    public static void exitCall(Interpreter interpreter) {
+        interpreter.exitCall();
+    }
+
+    public static LoxCallable checkCallable(Token paren, Object callee, int argumentCount) {
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+
+        if (argumentCount != function.arity()) {
+            var message = "Expected " + function.arity() + " arguments but got " + argumentCount + ".";
+            throw new RuntimeError(paren, message);
+        }
+
+        return function;
+    }
+
+    public static Object call0(Interpreter interpreter, Token paren, Object callee) {
+        interpreter.enterCall(paren);
+        try {
+            return checkCallable(paren, callee, 0).call0(interpreter);
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            interpreter.exitCall();
+        }
+    }
+
+    public static Object call1(Interpreter interpreter, Token paren, Object callee, Object argument) {
+        interpreter.enterCall(paren);
+        try {
+            return checkCallable(paren, callee, 1).call1(interpreter, argument);
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            interpreter.exitCall();
+        }
+    }
+
+    public static Object call2(Interpreter interpreter, Token paren, Object callee, Object first, Object second) {
+        interpreter.enterCall(paren);
+        try {
+            return checkCallable(paren, callee, 2).call2(interpreter, first, second);
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            interpreter.exitCall();
+        }
+    }
+
+    public static Object call(Interpreter interpreter, Token paren, Object callee, Object[] arguments) {
+        var values = new ArrayList<Object>(arguments.length);
+        for (var argument : arguments) {
+            values.add(argument);
+        }
+
+        interpreter.enterCall(paren);
+        try {
+            return checkCallable(paren, callee, arguments.length).call(interpreter, values);
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            interpreter.exitCall();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package dev.backendsouls.lox;
+
+// A lazy stream of values: each one is computed when it's asked for, so a pipeline over millions of
+// items holds one item at a time. Sequences come from range(), from calling a generator function
+// (see LoxGenerator) and from wrapping another sequence with take(), mapSeq() or filterSeq().
+//
+// Functions given to mapSeq and filterSeq run on whichever interpreter consumes the sequence, since
+// that's the thread asking for the next value.
+//
+// A consumer that stops before the end closes the sequence, which lets a generator behind it end
+// its thread. take() does so once it has its items.
+public abstract class LoxSequence {
+    abstract boolean hasNext(Interpreter interpreter);
+
+    abstract Object next(Interpreter interpreter);
+
+    // Releases whatever produces the values; nothing more can be asked for afterwards.
+    void close() {
+    }
+
+    // Shared by the natives: next() past the end is an error rather than nil, which could be a value.
+    final Object nextOrFail(Interpreter interpreter) {
+        if (!this.hasNext(interpreter)) {
+            throw new NativeError("Sequence is exhausted.");
+        }
+
+        return this.next(interpreter);
+    }
+
+    @Override
+    public String toString() {
+        return "<sequence>";
+    }
+
+    static final class Range extends LoxSequence {
+        private double current;
+
+        private final double end;
+
+        Range(double start, double end) {
+            this.current = start;
+            this.end = end;
+        }
+
+        @Override
+        boolean hasNext(Interpreter interpreter) {
+            return this.current < this.end;
+        }
+
+        @Override
+        Object next(Interpreter interpreter) {
+            return this.current++;
+        }
+    }
+
+    static final class Take extends LoxSequence {
+        private final LoxSequence source;
+
+        private int remaining;
+
+        Take(LoxSequence source, int count) {
+            this.source = source;
+            this.remaining = count;
+        }
+
+        @Override
+        boolean hasNext(Interpreter interpreter) {
+            if (this.remaining <= 0) {
+                this.source.close();
+                return false;
+            }
+
+            return this.source.hasNext(interpreter);
+        }
+
+        @Override
+        Object next(Interpreter interpreter) {
+            this.remaining--;
+            var item = this.source.next(interpreter);
+
+            if (this.remaining <= 0) {
+                this.source.close();
+            }
+
+            return item;
+        }
+
+        @Override
+        void close() {
+            this.source.close();
+        }
+    }
+
+    static final class Map extends LoxSequence {
+        private final LoxSequence source;
+
+        private final LoxCallable function;
+
+        Map(LoxSequence source, LoxCallable function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        boolean hasNext(Interpreter interpreter) {
+            return this.source.hasNext(interpreter);
+        }
+
+        @Override
+        Object next(Interpreter interpreter) {
+            return this.function.call1(interpreter, this.source.next(interpreter));
+        }
+
+        @Override
+        void close() {
+            this.source.close();
+        }
+    }
+
+    // Looks one item ahead, since only the predicate can tell whether another one is coming.
+    static final class Filter extends LoxSequence {
+        private final LoxSequence source;
+
+        private final LoxCallable predicate;
+
+        private boolean buffered = false;
+
+        private Object item;
+
+        Filter(LoxSequence source, LoxCallable predicate) {
+            this.source = source;
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean hasNext(Interpreter interpreter) {
+            while (!this.buffered && this.source.hasNext(interpreter)) {
+                var item = this.source.next(interpreter);
+
+                if (LoxRuntime.isTruthy(this.predicate.call1(interpreter, item))) {
+                    this.item = item;
+                    this.buffered = true;
+                }
+            }
+
+            return this.buffered;
+        }
+
+        @Override
+        Object next(Interpreter interpreter) {
+            this.hasNext(interpreter);
+            this.buffered = false;
+
+            var item = this.item;
+            this.item = null;
+            return item;
+        }
+
+        @Override
+        void close() {
+            this.source.close();
+            this.buffered = false;
+            this.item = null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package dev.backendsouls.lox;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// A function running on a virtual thread of its own, started by spawn(fn) and joined by
+// await(task). The task runs on a child interpreter over the same globals; like parallelMap, it
+// only accepts functions that assign nothing but their own locals. The main thread keeps running
+// meanwhile, so the globals a task reads may still change under it; Environment synchronizes them.
+//
+// A virtual thread's stack is bounded by -Xss rather than Lox.STACK_SIZE, so a task reaches a far
+// smaller call depth than the main thread before it's a stack overflow.
+public class LoxTask {
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+    LoxTask(Interpreter parent, LoxFunction function) {
+        Thread.ofVirtual().name("jlox-task").start(() -> {
+            try {
+                this.result.complete(function.call0(new Interpreter(parent)));
+            } catch (Throwable error) {
+                this.result.completeExceptionally(error);
+            }
+        });
+    }
+
+    // Blocks until the task finishes; an error in the task is rethrown in the awaiting one.
+    Object await() {
+        try {
+            return this.result.join();
+        } catch (CompletionException error) {
+            if (error.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw new NativeError("Task failed: " + error.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,180 @@
+package dev.backendsouls.lox;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MemoizedFunction implements LoxCallable {
+    static final int DEFAULT_CAPACITY = 1024;
+
+    // The cache can't tell a missing entry from a cached nil, so nil keys and results are boxed.
+    private static final Object NIL = new Object();
+
+    // What cached returns when the cache can't be used at all.
+    private static final Object BYPASS = new Object();
+
+    private final LoxFunction function;
+
+    private final int capacity;
+
+    // Access-ordered, so even a lookup changes it. Guarded, together with bindings and pure, by
+    // the wrapper's monitor: a memoized prelude function is called by every script at once. The
+    // calls themselves run outside it.
+    private final Map<Object, Object> cache;
+
+    // What the function's free names resolved to when it was last found pure; null until the first
+    // call, since a restored snapshot may not have defined them all yet.
+    private List<Purity.Binding> bindings;
+
+    // Cleared for good once a reassigned name makes the function impure; calls then go straight
+    // through.
+    private boolean pure = true;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public MemoizedFunction(LoxFunction function, int capacity) {
+        this.function = function;
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public int arity() {
+        return this.function.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        for (var argument : arguments) {
+            if (!isKeyable(argument)) {
+                this.misses.increment();
+                return this.function.call(interpreter, arguments);
+            }
+        }
+
+        var key = Arrays.asList(arguments.toArray());
+        var result = this.cached(key);
+
+        if (result == BYPASS) {
+            this.misses.increment();
+            return this.function.call(interpreter, arguments);
+        }
+
+        if (result == null) {
+            result = box(this.function.call(interpreter, arguments));
+            this.store(key, result);
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+
+        return unbox(result);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object argument) {
+        // Single arguments are their own key, which saves building a tuple on every call.
+        var key = box(argument);
+        var result = isKeyable(argument) ? this.cached(key) : BYPASS;
+
+        if (result == BYPASS) {
+            this.misses.increment();
+            return this.function.call1(interpreter, argument);
+        }
+
+        if (result == null) {
+            result = box(this.function.call1(interpreter, argument));
+            this.store(key, result);
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+
+        return unbox(result);
+    }
+
+    LoxFunction function() {
+        return this.function;
+    }
+
+    int capacity() {
+        return this.capacity;
+    }
+
+    LoxMap stats() {
+        var stats = new LoxMap();
+        stats.put("hits", (double) this.hits.sum());
+        stats.put("misses", (double) this.misses.sum());
+
+        synchronized (this) {
+            stats.put("size", (double) this.cache.size());
+        }
+
+        return stats;
+    }
+
+    // The boxed result cached for key, null when there is none, or BYPASS when the cache is unusable.
+    private synchronized Object cached(Object key) {
+        return this.isCacheValid() ? this.cache.get(key) : BYPASS;
+    }
+
+    private synchronized void store(Object key, Object result) {
+        this.cache.put(key, result);
+    }
+
+    // Cached results stay valid only while every name the function calls still holds what it was
+    // checked against. When one has been reassigned, the cache is dropped and the function checked
+    // again.
+    private boolean isCacheValid() {
+        if (!this.pure) {
+            return false;
+        }
+
+        if (this.bindings != null && this.isCurrent()) {
+            return true;
+        }
+
+        this.cache.clear();
+        this.bindings = Purity.pureBindings(this.function);
+        this.pure = this.bindings != null;
+
+        return this.pure;
+    }
+
+    private boolean isCurrent() {
+        for (var binding : this.bindings) {
+            if (!binding.isCurrent()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Only immutable values make sound keys; anything else goes straight to the function.
+    private static boolean isKeyable(Object value) {
+        return value == null || value instanceof Double || value instanceof String || value instanceof Boolean;
+    }
+
+    private static Object box(Object value) {
+        return value == null ? NIL : value;
+    }
+
+    private static Object unbox(Object value) {
+        return value == NIL ? null : value;
+    }
+
+    @Override
+    public String toString() {
+        return this.function.toString();
+    }
+}
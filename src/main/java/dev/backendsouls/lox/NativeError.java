@@ -0,0 +1,9 @@
+package dev.backendsouls.lox;
+
+// Natives don't know the call site, so they throw this and the interpreter
+// turns it into a RuntimeError at the call's closing paren.
+public class NativeError extends RuntimeException {
+    public NativeError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package dev.backendsouls.lox;
+
+import java.util.List;
+
+public record NativeFunction(String name, int arity, Body body) implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return this.body.call(interpreter, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,302 @@
+package dev.backendsouls.lox;
+
+import java.util.List;
+
+final class Natives {
+    // Bodies are one switch rather than a lambda each: bootstrapping a dozen lambdas costs more
+    // than the rest of interpreter startup put together.
+    private static final List<NativeFunction> functions = List.of(
+            builtin("clock", 0),
+
+            // Collections
+            builtin("list", 0),
+            builtin("array", 2),
+            builtin("map", 0),
+            builtin("len", 1),
+            builtin("push", 2),
+            builtin("pop", 1),
+            builtin("has", 2),
+            builtin("remove", 2),
+            builtin("keys", 1),
+            builtin("parallelMap", 2),
+
+            // Sequences
+            builtin("range", 2),
+            builtin("hasNext", 1),
+            builtin("next", 1),
+            builtin("take", 2),
+            builtin("mapSeq", 2),
+            builtin("filterSeq", 2),
+            builtin("collect", 1),
+
+            // Tasks
+            builtin("spawn", 1),
+            builtin("await", 1),
+            builtin("channel", 0),
+            builtin("send", 2),
+            builtin("receive", 1),
+            builtin("sleep", 1),
+
+            // Memoization
+            builtin("memoize", 1),
+            builtin("memoStats", 1)
+    );
+
+    private record Builtin(String name) implements NativeFunction.Body {
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return switch (this.name) {
+                case "clock" -> (double) System.currentTimeMillis() / 1000.0;
+                case "list" -> {
+                    charge(interpreter, Quota.LIST);
+                    yield new LoxList();
+                }
+                case "array" -> {
+                    var size = size(arguments.get(0));
+                    charge(interpreter, Quota.LIST + size * Quota.ELEMENT);
+                    yield new LoxList(size, arguments.get(1));
+                }
+                case "map" -> {
+                    charge(interpreter, Quota.MAP);
+                    yield new LoxMap();
+                }
+                case "len" -> len(arguments.get(0));
+                case "push" -> {
+                    var list = mutable(list(arguments.get(0)));
+                    charge(interpreter, Quota.ELEMENT);
+                    list.add(arguments.get(1));
+                    yield null;
+                }
+                case "pop" -> pop(mutable(list(arguments.get(0))));
+                case "has" -> map(arguments.get(0)).containsKey(arguments.get(1));
+                case "remove" -> mutable(map(arguments.get(0))).remove(arguments.get(1));
+                case "keys" -> {
+                    var map = map(arguments.get(0));
+                    charge(interpreter, Quota.LIST + map.size() * Quota.ELEMENT);
+                    yield map.keys();
+                }
+                case "parallelMap" -> Parallel.map(interpreter, arguments.get(0), arguments.get(1));
+                case "range" -> new LoxSequence.Range(number(arguments.get(0)), number(arguments.get(1)));
+                case "hasNext" -> sequence(arguments.get(0)).hasNext(interpreter);
+                case "next" -> sequence(arguments.get(0)).nextOrFail(interpreter);
+                case "take" -> new LoxSequence.Take(sequence(arguments.get(0)), size(arguments.get(1)));
+                case "mapSeq" -> new LoxSequence.Map(sequence(arguments.get(0)), function(arguments.get(1)));
+                case "filterSeq" -> new LoxSequence.Filter(sequence(arguments.get(0)), function(arguments.get(1)));
+                case "collect" -> collect(interpreter, sequence(arguments.get(0)));
+                case "spawn" -> spawn(interpreter, arguments.get(0));
+                case "await" -> task(arguments.get(0)).await();
+                case "channel" -> new LoxChannel();
+                case "send" -> {
+                    channel(arguments.get(0)).send(arguments.get(1));
+                    yield null;
+                }
+                case "receive" -> channel(arguments.get(0)).receive();
+                case "sleep" -> sleep(arguments.get(0));
+                case "memoize" -> memoize(arguments.get(0));
+                case "memoStats" -> memoStats(arguments.get(0));
+                default -> throw new IllegalStateException("Unknown native " + this.name);
+            };
+        }
+    }
+
+    private Natives() {
+    }
+
+    private static NativeFunction builtin(String name, int arity) {
+        return new NativeFunction(name, arity, new Builtin(name));
+    }
+
+    static NativeFunction get(String name) {
+        for (var function : functions) {
+            if (function.name().equals(name)) {
+                return function;
+            }
+        }
+
+        return null;
+    }
+
+    static void define(Environment environment) {
+        for (var function : functions) {
+            environment.define(function.name(), function);
+        }
+    }
+
+    private static void charge(Interpreter interpreter, long bytes) {
+        if (!interpreter.tryCharge(bytes)) {
+            throw new NativeError("Memory quota exceeded.");
+        }
+    }
+
+    private static Object len(Object value) {
+        if (value instanceof LoxList list) {
+            return (double) list.size();
+        }
+
+        if (value instanceof LoxMap map) {
+            return (double) map.size();
+        }
+
+        if (value instanceof String string) {
+            return (double) string.length();
+        }
+
+        throw new NativeError("Can only take the length of lists, maps and strings.");
+    }
+
+    private static Object pop(LoxList list) {
+        if (list.size() == 0) {
+            throw new NativeError("Can't pop from an empty list.");
+        }
+
+        return list.removeLast();
+    }
+
+    private static Object collect(Interpreter interpreter, LoxSequence sequence) {
+        charge(interpreter, Quota.LIST);
+        var list = new LoxList();
+
+        while (sequence.hasNext(interpreter)) {
+            var item = sequence.next(interpreter);
+            charge(interpreter, Quota.ELEMENT);
+            list.add(item);
+        }
+
+        return list;
+    }
+
+    private static Object memoize(Object value) {
+        if (value instanceof MemoizedFunction) {
+            return value;
+        }
+
+        if (!(value instanceof LoxFunction function)) {
+            throw new NativeError("Can only memoize Lox functions.");
+        }
+
+        if (!Purity.isPure(function)) {
+            throw new NativeError("Can only memoize pure functions.");
+        }
+
+        return new MemoizedFunction(function, MemoizedFunction.DEFAULT_CAPACITY);
+    }
+
+    private static Object memoStats(Object value) {
+        if (value instanceof MemoizedFunction function) {
+            return function.stats();
+        }
+
+        throw new NativeError("Expected a memoized function.");
+    }
+
+    private static Object spawn(Interpreter interpreter, Object value) {
+        if (!(value instanceof LoxFunction function) || function.arity() != 0) {
+            throw new NativeError("Can only spawn Lox functions without parameters.");
+        }
+
+        if (!Purity.isParallelSafe(function)) {
+            throw new NativeError("Can only spawn functions that assign nothing but their own locals.");
+        }
+
+        return new LoxTask(interpreter, function);
+    }
+
+    private static Object sleep(Object value) {
+        if (!(value instanceof Double seconds) || seconds < 0) {
+            throw new NativeError("Expected a non-negative number of seconds.");
+        }
+
+        try {
+            Thread.sleep((long) (seconds * 1000));
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while sleeping.");
+        }
+
+        return null;
+    }
+
+    private static LoxTask task(Object value) {
+        if (value instanceof LoxTask task) {
+            return task;
+        }
+
+        throw new NativeError("Expected a task.");
+    }
+
+    private static LoxChannel channel(Object value) {
+        if (value instanceof LoxChannel channel) {
+            return channel;
+        }
+
+        throw new NativeError("Expected a channel.");
+    }
+
+    private static LoxSequence sequence(Object value) {
+        if (value instanceof LoxSequence sequence) {
+            return sequence;
+        }
+
+        throw new NativeError("Expected a sequence.");
+    }
+
+    private static LoxCallable function(Object value) {
+        if (value instanceof LoxCallable callable && callable.arity() == 1) {
+            return callable;
+        }
+
+        throw new NativeError("Expected a function of one argument.");
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+
+        throw new NativeError("Expected a number.");
+    }
+
+    private static LoxList list(Object value) {
+        if (value instanceof LoxList list) {
+            return list;
+        }
+
+        throw new NativeError("Expected a list.");
+    }
+
+    private static LoxMap map(Object value) {
+        if (value instanceof LoxMap map) {
+            return map;
+        }
+
+        throw new NativeError("Expected a map.");
+    }
+
+    private static LoxList mutable(LoxList list) {
+        if (list.isFrozen()) {
+            throw new NativeError("Can't modify a prelude list.");
+        }
+
+        return list;
+    }
+
+    private static LoxMap mutable(LoxMap map) {
+        if (map.isFrozen()) {
+            throw new NativeError("Can't modify a prelude map.");
+        }
+
+        return map;
+    }
+
+    private static int size(Object value) {
+        if (!(value instanceof Double number) || number != Math.floor(number)) {
+            throw new NativeError("Size must be an integer.");
+        }
+
+        if (number < 0 || number > Integer.MAX_VALUE) {
+            throw new NativeError("Size out of range.");
+        }
+
+        return number.intValue();
+    }
+}
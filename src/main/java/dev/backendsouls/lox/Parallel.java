@@ -0,0 +1,139 @@
+package dev.backendsouls.lox;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// parallelMap(items, fn): calls fn on every element of a list, or on every index below a count,
+// across a pool of worker threads, and returns the results in order. Each worker runs on an
+// interpreter of its own over the shared globals. Only functions that assign nothing but their own
+// locals are accepted, so the workers never write to shared variables.
+//
+// The workers are platform threads with the same stack size as the main one, so fn may recurse as
+// deeply as it could outside parallelMap; fork/join workers can't be given a stack size. The
+// calling thread takes chunks of the range too, and only waits for chunks already being run, so a
+// nested parallelMap can't deadlock on a pool whose workers are all busy.
+final class Parallel {
+    // Calls made by one task before it stops splitting its range.
+    private static final int CHUNK = 64;
+
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(WORKERS, task -> {
+        var thread = new Thread(null, task, "jlox-parallel", Lox.STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Parallel() {
+    }
+
+    static LoxList map(Interpreter interpreter, Object items, Object function) {
+        var callable = check(function);
+        var list = items instanceof LoxList values ? values : null;
+        var count = list != null ? list.size() : count(items);
+        if (!interpreter.tryCharge(Quota.LIST + 2L * count * Quota.ELEMENT)) {
+            throw new NativeError("Memory quota exceeded.");
+        }
+
+        var results = new Object[count];
+
+        new Job(interpreter, callable, list, results).run();
+
+        var result = new LoxList();
+        for (var value : results) {
+            result.add(value);
+        }
+
+        return result;
+    }
+
+    private static LoxFunction check(Object function) {
+        if (!(function instanceof LoxCallable callable) || callable.arity() != 1) {
+            throw new NativeError("Expected a function of one argument.");
+        }
+
+        if (!(function instanceof LoxFunction lox) || !Purity.isParallelSafe(lox)) {
+            throw new NativeError("Can only run functions that assign nothing but their own locals in parallel.");
+        }
+
+        return lox;
+    }
+
+    private static int count(Object items) {
+        if (items instanceof Double number && number >= 0 && number <= Integer.MAX_VALUE && number == Math.floor(number)) {
+            return number.intValue();
+        }
+
+        throw new NativeError("Expected a list or a non-negative integer.");
+    }
+
+    private static final class Job {
+        private final Interpreter parent;
+        private final LoxFunction function;
+        private final LoxList items;
+        private final Object[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final CountDownLatch done;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private Job(Interpreter parent, LoxFunction function, LoxList items, Object[] results) {
+            this.parent = parent;
+            this.function = function;
+            this.items = items;
+            this.results = results;
+            this.done = new CountDownLatch((results.length + CHUNK - 1) / CHUNK);
+        }
+
+        void run() {
+            for (var i = 1; i < Math.min(WORKERS, this.done.getCount()); i++) {
+                POOL.execute(this::work);
+            }
+
+            this.work();
+
+            try {
+                this.done.await();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+                throw new NativeError("Interrupted while waiting for parallelMap.");
+            }
+
+            switch (this.failure.get()) {
+                case null -> {
+                }
+                case RuntimeException error -> throw error;
+                case Error error -> throw error;
+                case Throwable error -> throw new NativeError("parallelMap failed: " + error);
+            }
+        }
+
+        // Takes chunks until none are left, or one has failed.
+        private void work() {
+            var worker = new Interpreter(this.parent);
+
+            var count = this.results.length;
+
+            for (var from = this.next.getAndAdd(CHUNK); from < count; from = this.next.getAndAdd(CHUNK)) {
+                try {
+                    if (this.failure.get() == null) {
+                        this.chunk(worker, from, Math.min(from + CHUNK, count));
+                    }
+                } catch (Throwable error) {
+                    this.failure.compareAndSet(null, error);
+                } finally {
+                    this.done.countDown();
+                }
+            }
+        }
+
+        private void chunk(Interpreter worker, int from, int to) {
+            for (var i = from; i < to; i++) {
+                var item = this.items != null ? this.items.get(i) : (Object) (double) i;
+                this.results[i] = this.function.call1(worker, item);
+            }
+        }
+    }
+}
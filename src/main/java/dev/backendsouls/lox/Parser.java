@@ -1,15 +1,78 @@
 package dev.backendsouls.lox;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class Parser {
+    static final boolean LAZY = Boolean.getBoolean("jlox.lazy");
+
+    // Binding powers for the expression parser, loosest first.
+    private static final int NONE = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int OR = 2;
+    private static final int AND = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
+
+    // Infix binding power of each token type, indexed by ordinal. Everything else is NONE.
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    private static final Set<TokenType> PREFIX = EnumSet.of(
+            TokenType.FALSE, TokenType.TRUE, TokenType.NIL, TokenType.NUMBER, TokenType.STRING,
+            TokenType.IDENTIFIER, TokenType.LEFT_PAREN, TokenType.BANG, TokenType.MINUS
+    );
+
+    static {
+        precedence(ASSIGNMENT, TokenType.EQUAL);
+        precedence(OR, TokenType.OR);
+        precedence(AND, TokenType.AND);
+        precedence(EQUALITY, TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
+        precedence(COMPARISON, TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL);
+        precedence(TERM, TokenType.MINUS, TokenType.PLUS);
+        precedence(FACTOR, TokenType.SLASH, TokenType.STAR);
+        precedence(CALL, TokenType.LEFT_PAREN, TokenType.LEFT_BRACKET);
+    }
+
     private final List<Token> tokens;
-    private int current = 0;
+    private final ErrorReporter reporter;
+    private final boolean lazy;
+    private final int end;
+    private int current;
+    private int depth = 0;
+    private boolean failed = false;
 
     public Parser(final List<Token> tokens) {
+        this(tokens, Lox.reporter());
+    }
+
+    public Parser(final List<Token> tokens, final ErrorReporter reporter) {
+        this(tokens, reporter, false);
+    }
+
+    // With lazy set, function bodies are only brace-matched here and parsed on first use.
+    public Parser(final List<Token> tokens, final ErrorReporter reporter, final boolean lazy) {
+        this(tokens, 0, tokens.size() - 1, reporter, lazy);
+    }
+
+    // Parses tokens[start, end) as if tokens[end] were the end of the input.
+    Parser(final List<Token> tokens, final int start, final int end, final ErrorReporter reporter, final boolean lazy) {
         this.tokens = tokens;
+        this.current = start;
+        this.end = end;
+        this.reporter = reporter;
+        this.lazy = lazy;
+    }
+
+    private static void precedence(int precedence, TokenType... tokenTypes) {
+        for (var tokenType : tokenTypes) {
+            PRECEDENCE[tokenType.ordinal()] = precedence;
+        }
     }
 
     public List<Stmt> parse() {
@@ -40,6 +103,7 @@ public class Parser {
 
     private Stmt.Function function(String kind) {
         var parameters = new ArrayList<Token>();
+        var types = new ArrayList<Token>();
         var name = this.consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
 
         this.consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
@@ -53,29 +117,51 @@ public class Parser {
                 parameters.add(
                         this.consume(TokenType.IDENTIFIER, "Expect parameter name.")
                 );
+                types.add(this.typeAnnotation());
             } while (this.match(TokenType.COMMA));
         }
         this.consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
+        var returnType = this.typeAnnotation();
 
         this.consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
-        var body = this.block();
+        var body = this.lazy ? this.skipBody(name) : this.block();
 
-        return new Stmt.Function(name, parameters, body);
+        return new Stmt.Function(name, parameters, body, types, returnType);
+    }
+
+    // The optional `: type` after a variable, parameter or parameter list; null when absent.
+    private Token typeAnnotation() {
+        if (this.match(TokenType.COLON)) {
+            return this.consume(TokenType.IDENTIFIER, "Expect type name after ':'.");
+        }
+
+        return null;
     }
 
     private Stmt varDeclaration() {
         Expr initializer = null;
         Token name = this.consume(TokenType.IDENTIFIER, "Expect variable name.");
+        var type = this.typeAnnotation();
 
         if (this.match(TokenType.EQUAL)) {
             initializer = this.expression();
         }
 
         this.consume(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
-        return new Stmt.Var(name, initializer);
+        return new Stmt.Var(name, initializer, type);
     }
 
     private Stmt statement() {
+        this.enter();
+
+        try {
+            return this.nestedStatement();
+        } finally {
+            this.depth--;
+        }
+    }
+
+    private Stmt nestedStatement() {
         // For Stmt
         if (this.match(TokenType.FOR)) {
             return this.forStatement();
@@ -96,6 +182,10 @@ public class Parser {
             return this.returnStatement();
         }
 
+        if (this.match(TokenType.YIELD)) {
+            return this.yieldStatement();
+        }
+
         // While Stmt
         if (this.match(TokenType.WHILE)) {
             return this.whileStatement();
@@ -109,6 +199,15 @@ public class Parser {
         return this.expressionStatement();
     }
 
+    private Stmt yieldStatement() {
+        var keyword = this.previous();
+        var value = this.expression();
+
+        this.consume(TokenType.SEMICOLON, "Expect ';' after yield value.");
+
+        return new Stmt.Yield(keyword, value);
+    }
+
     private Stmt returnStatement() {
         var keyword = this.previous();
         Expr value = null;
@@ -152,27 +251,7 @@ public class Parser {
         // Body
         var body = this.statement();
 
-        if (increment != null) {
-            body = new Stmt.Block(Arrays.asList(
-                    body,
-                    new Stmt.Expression(increment)
-            ));
-        }
-
-        if (condition == null) {
-            condition = new Expr.Literal(true);
-        }
-
-        body = new Stmt.While(condition, body);
-
-        if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(
-                    initializer,
-                    body
-            ));
-        }
-
-        return body;
+        return LoopOptimizer.forLoop(initializer, condition, increment, body);
     }
 
     private Stmt whileStatement() {
@@ -200,6 +279,32 @@ public class Parser {
         return new Stmt.If(condition, thenBranch, elseBranch);
     }
 
+    private List<Stmt> skipBody(Token name) {
+        var start = this.current;
+        var depth = 0;
+
+        while (!this.isAtEnd() && (depth > 0 || !this.check(TokenType.RIGHT_BRACE))) {
+            switch (this.advance().tokenType()) {
+                case LEFT_BRACE -> depth++;
+                case RIGHT_BRACE -> depth--;
+                default -> {
+                }
+            }
+        }
+
+        // Only the body's own tokens, and the '}' after them, so an uncalled function doesn't keep
+        // the whole script's tokens alive.
+        var tokens = List.copyOf(this.tokens.subList(start, this.current + 1));
+        var body = new LazyBody(tokens, name, this.reporter);
+        this.consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
+
+        return body;
+    }
+
+    boolean failed() {
+        return this.failed;
+    }
+
     private List<Stmt> block() {
         var statements = new ArrayList<Stmt>();
 
@@ -225,121 +330,84 @@ public class Parser {
     }
 
     private Expr expression() {
-        return this.assignment();
-    }
-
-    private Expr assignment() {
-        var expr = this.or();
-
-        if (this.match(TokenType.EQUAL)) {
-            var equals = this.previous();
-            var value = this.assignment();
-
-            if (expr instanceof Expr.Variable) {
-                var name = ((Expr.Variable) expr).name();
-                return new Expr.Assign(name, value);
-            }
-
-            this.error(equals, "Invalid assignment target.");
-        }
-
-        return expr;
+        return this.expression(ASSIGNMENT);
     }
 
-    private Expr or() {
-        var expr = this.and();
+    // Parses operators binding at least as tightly as minimum. Each infix operator parses its right
+    // operand one level tighter, except '=', which is right-associative.
+    private Expr expression(int minimum) {
+        this.enter();
 
-        while (this.match(TokenType.OR)) {
-            var operator = this.previous();
-            var right = this.and();
-            expr = new Expr.Logical(expr, operator, right);
+        try {
+            return this.infixes(this.prefix(), minimum);
+        } finally {
+            this.depth--;
         }
-
-        return expr;
     }
 
-    private Expr and() {
-        var expr = this.equality();
-
-        while (this.match(TokenType.AND)) {
-            var operator = this.previous();
-            var right = this.equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
+    private Expr infixes(Expr expr, int minimum) {
+        while (true) {
+            var precedence = PRECEDENCE[this.peek().tokenType().ordinal()];
 
-    private Expr equality() {
-        var expr = this.comparison();
+            if (precedence == NONE || precedence < minimum) {
+                return expr;
+            }
 
-        while (this.match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            var operator = this.previous();
-            expr = this.getNextBinaryOperation(expr, operator, this.comparison());
+            expr = this.infix(expr, this.advance(), precedence);
         }
-
-        return expr;
     }
 
-    private Expr comparison() {
-        var expr = this.term();
+    private Expr prefix() {
+        var token = this.peek();
 
-        while (this.match(
-                TokenType.GREATER,
-                TokenType.GREATER_EQUAL,
-                TokenType.LESS,
-                TokenType.LESS_EQUAL
-        )) {
-            var operator = this.previous();
-            expr = this.getNextBinaryOperation(expr, operator, this.term());
+        if (this.isAtEnd() || !PREFIX.contains(token.tokenType())) {
+            throw this.error(token, "Expect expression.");
         }
 
-        return expr;
-    }
-
-    private Expr term() {
-        var expr = this.factor();
-
-        while (this.match(TokenType.MINUS, TokenType.PLUS)) {
-            var operator = this.previous();
-            expr = this.getNextBinaryOperation(expr, operator, this.factor());
-        }
+        this.advance();
 
-        return expr;
+        return switch (token.tokenType()) {
+            case FALSE -> new Expr.Literal(false);
+            case TRUE -> new Expr.Literal(true);
+            case NIL -> new Expr.Literal(null);
+            case NUMBER, STRING -> new Expr.Literal(token.literal());
+            case IDENTIFIER -> new Expr.Variable(token);
+            case LEFT_PAREN -> {
+                var expr = this.expression();
+                this.consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                yield new Expr.Grouping(expr);
+            }
+            default -> new Expr.Unary(token, this.expression(UNARY));
+        };
+    }
+
+    private Expr infix(Expr left, Token operator, int precedence) {
+        return switch (operator.tokenType()) {
+            case EQUAL -> this.assignment(left, operator);
+            case OR, AND -> new Expr.Logical(left, operator, this.expression(precedence + 1));
+            case LEFT_PAREN -> this.finishCall(left);
+            case LEFT_BRACKET -> {
+                var index = this.expression();
+                var bracket = this.consume(TokenType.RIGHT_BRACKET, "Expect ']' after index.");
+                yield new Expr.Index(left, bracket, index);
+            }
+            default -> new Expr.Binary(left, operator, this.expression(precedence + 1));
+        };
     }
 
-    private Expr factor() {
-        var expr = this.unary();
+    private Expr assignment(Expr target, Token equals) {
+        var value = this.expression(ASSIGNMENT);
 
-        while (this.match(TokenType.SLASH, TokenType.STAR)) {
-            var operator = this.previous();
-            expr = this.getNextBinaryOperation(expr, operator, this.unary());
+        if (target instanceof Expr.Variable variable) {
+            return new Expr.Assign(variable.name(), value);
         }
 
-        return expr;
-    }
-
-    private Expr unary() {
-        if (this.match(TokenType.BANG, TokenType.MINUS)) {
-            var operator = this.previous();
-            return new Expr.Unary(operator, this.unary());
-        }
-
-        return this.call();
-    }
-
-    private Expr call() {
-        var expr = this.primary();
-
-        while (true) {
-            if (this.match(TokenType.LEFT_PAREN)) {
-                expr = this.finishCall(expr);
-            } else {
-                break;
-            }
+        if (target instanceof Expr.Index index) {
+            return new Expr.IndexSet(index.object(), index.bracket(), index.index(), value);
         }
 
-        return expr;
+        this.error(equals, "Invalid assignment target.");
+        return target;
     }
 
     private Expr finishCall(Expr callee) {
@@ -360,40 +428,6 @@ public class Parser {
         return new Expr.Call(callee, paren, arguments);
     }
 
-    private Expr getNextBinaryOperation(Expr leftExpr, Token operator, Expr rightExpr) {
-        return new Expr.Binary(leftExpr, operator, rightExpr);
-    }
-
-    private Expr primary() {
-        if (this.match(TokenType.FALSE)) {
-            return new Expr.Literal(false);
-        }
-
-        if (this.match(TokenType.TRUE)) {
-            return new Expr.Literal(true);
-        }
-
-        if (this.match(TokenType.NIL)) {
-            return new Expr.Literal(null);
-        }
-
-        if (this.match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(this.previous().literal());
-        }
-
-        if (this.match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(this.previous());
-        }
-
-        if (this.match(TokenType.LEFT_PAREN)) {
-            var expr = this.expression();
-            this.consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
-
-        throw this.error(this.peek(), "Expect expression.");
-    }
-
     private void synchronize() {
         this.advance();
 
@@ -411,17 +445,24 @@ public class Parser {
                 case TokenType.WHILE:
                 case TokenType.PRINT:
                 case TokenType.RETURN:
+                case TokenType.YIELD:
                     return;
             }
-        }
 
-        this.advance();
+            this.advance();
+        }
     }
 
     /**
      * Auxiliary Methods
      */
 
+    private void enter() {
+        if (++this.depth > Lox.MAX_DEPTH) {
+            throw this.error(this.peek(), "Too deeply nested.");
+        }
+    }
+
     private Token consume(TokenType tokenType, String message) {
         if (this.check(tokenType)) {
             return this.advance();
@@ -431,16 +472,15 @@ public class Parser {
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        this.failed = true;
+        this.reporter.error(token, message);
         return new ParseError();
     }
 
-    private boolean match(TokenType... tokenTypes) {
-        for (var tokenType : tokenTypes) {
-            if (this.check(tokenType)) {
-                this.advance();
-                return true;
-            }
+    private boolean match(TokenType tokenType) {
+        if (this.check(tokenType)) {
+            this.advance();
+            return true;
         }
 
         return false;
@@ -455,7 +495,7 @@ public class Parser {
     }
 
     private boolean isAtEnd() {
-        return this.peek().tokenType() == TokenType.EOF;
+        return this.current >= this.end || this.peek().tokenType() == TokenType.EOF;
     }
 
     private Token peek() {
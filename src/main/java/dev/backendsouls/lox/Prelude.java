@@ -0,0 +1,95 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Helper definitions loaded once and shared by any number of interpreters. The prelude's globals
+// are frozen after loading, so they can be read from many threads without locking; interpreters
+// started from it keep their own variables, and their own copies of any prelude variable they
+// assign, on top. Functions from the prelude keep seeing the prelude's globals, not the
+// interpreter's. Everything reachable from the globals is frozen too: lists and maps, which then
+// can't be modified, and the frames closures captured, which can't be assigned.
+public final class Prelude {
+    private final Environment globals;
+
+    private Prelude(Environment globals) {
+        this.globals = globals;
+    }
+
+    // Returns null if the source has errors, which are reported to reporter.
+    public static Prelude load(String source, ErrorReporter reporter) {
+        var tokens = new Scanner(source, 1, reporter).scanTokens();
+        List<Stmt> statements = new Parser(tokens, reporter).parse();
+
+        if (!reporter.hadError()) {
+            TypeChecker.check(statements, reporter);
+        }
+
+        if (reporter.hadError()) {
+            return null;
+        }
+
+        var interpreter = new Interpreter(reporter, System.out);
+        interpreter.interpret(statements);
+
+        if (reporter.hadRuntimeError()) {
+            return null;
+        }
+
+        freeze(interpreter.globals());
+        return new Prelude(interpreter.globals());
+    }
+
+    private static void freeze(Environment globals) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        // A list rather than a deque, since values can be nil.
+        var pending = new ArrayList<Object>();
+        pending.add(globals);
+
+        while (!pending.isEmpty()) {
+            var value = pending.removeLast();
+
+            if (value == null || !seen.add(value)) {
+                continue;
+            }
+
+            switch (value) {
+                case Environment environment -> {
+                    environment.freeze();
+                    pending.addAll(environment.values().values());
+
+                    if (environment.enclosing() != null) {
+                        pending.add(environment.enclosing());
+                    }
+                }
+                case LoxList list -> {
+                    list.freeze();
+
+                    for (var i = 0; i < list.size(); i++) {
+                        pending.add(list.get(i));
+                    }
+                }
+                case LoxMap map -> {
+                    map.freeze();
+                    var keys = map.keys();
+
+                    for (var i = 0; i < keys.size(); i++) {
+                        pending.add(keys.get(i));
+                        pending.add(map.get(keys.get(i)));
+                    }
+                }
+                case LoxFunction function -> pending.add(function.closure());
+                case MemoizedFunction function -> pending.add(function.function());
+                default -> {
+                }
+            }
+        }
+    }
+
+    Environment globals() {
+        return this.globals;
+    }
+}
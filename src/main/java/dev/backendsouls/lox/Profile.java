@@ -0,0 +1,95 @@
+package dev.backendsouls.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which functions of a script got hot enough to compile, carried over from one run to the next.
+// A run that starts with a profile compiles those functions as soon as they are declared instead
+// of after Jit.THRESHOLD interpreted calls. The profile belongs to one exact source text: if the
+// script changed, the old one is ignored and rebuilt from scratch.
+//
+// The file is plain text:
+//
+//     source <sha-256 of the script>
+//     hot <function name> <line>
+final class Profile {
+    private final Path file;
+
+    private final String source;
+
+    private final Set<String> previous;
+
+    private final Set<String> hot = ConcurrentHashMap.newKeySet();
+
+    private Profile(Path file, String source, Set<String> previous) {
+        this.file = file;
+        this.source = source;
+        this.previous = previous;
+    }
+
+    static Profile load(Path file, String script) throws IOException {
+        var source = hash(script);
+        var previous = new HashSet<String>();
+
+        if (Files.exists(file)) {
+            var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+            if (!lines.isEmpty() && lines.get(0).equals("source " + source)) {
+                for (var line : lines.subList(1, lines.size())) {
+                    if (line.startsWith("hot ")) {
+                        previous.add(line.substring(4));
+                    }
+                }
+            }
+        }
+
+        return new Profile(file, source, previous);
+    }
+
+    boolean wasHot(Stmt.Function declaration) {
+        return this.previous.contains(key(declaration));
+    }
+
+    void hot(Stmt.Function declaration) {
+        this.hot.add(key(declaration));
+    }
+
+    void save() {
+        var lines = new ArrayList<String>();
+        lines.add("source " + this.source);
+
+        for (var key : this.hot.stream().sorted().toList()) {
+            lines.add("hot " + key);
+        }
+
+        try {
+            Files.write(this.file, lines, StandardCharsets.UTF_8);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // Tokens only carry a line, so a function is known by its name and the line it's declared on.
+    private static String key(Stmt.Function declaration) {
+        return declaration.name().lexeme() + " " + declaration.name().line();
+    }
+
+    private static String hash(String script) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+}
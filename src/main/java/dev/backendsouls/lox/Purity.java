@@ -0,0 +1,271 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Conservative check that a function's result depends only on its arguments: it may not
+// print, write to anything outside its own frame, create closures or call anything that
+// isn't pure itself. Names it doesn't declare are resolved against its closure when it is
+// checked, and the pure check hands back what they resolved to so a caller can notice when one of
+// them is reassigned later.
+//
+// The same check, relaxed to allow printing and allocating, decides whether a function is safe to
+// run on several threads at once: it then only has to leave shared variables alone.
+final class Purity implements Expr.Visitor<Boolean>, Stmt.Visitor<Boolean> {
+    private static final Set<String> PURE_NATIVES = Set.of("len");
+
+    private static final Set<String> PARALLEL_NATIVES = Set.of(
+            "clock", "list", "array", "map", "len", "has", "keys",
+            "parallelMap", "spawn", "await", "channel", "send", "receive", "sleep"
+    );
+
+    private final LoxFunction function;
+
+    private final boolean parallel;
+
+    private final Set<LoxFunction> visiting;
+
+    private final List<Binding> bindings;
+
+    // The function's own frame and the blocks nested in it, innermost first.
+    private final Deque<Set<String>> scopes = new ArrayDeque<>();
+
+    // A name the function resolved outside its own frame, with the value it was checked against.
+    record Binding(Environment closure, Token name, Object value) {
+        boolean isCurrent() {
+            return this.closure.contains(this.name) && this.closure.get(this.name) == this.value;
+        }
+    }
+
+    private Purity(LoxFunction function, boolean parallel, Set<LoxFunction> visiting, List<Binding> bindings) {
+        this.function = function;
+        this.parallel = parallel;
+        this.visiting = visiting;
+        this.bindings = bindings;
+    }
+
+    static boolean isPure(LoxFunction function) {
+        return pureBindings(function) != null;
+    }
+
+    // The names a pure function (and everything it calls) resolved outside its frame; null when
+    // the function isn't pure.
+    static List<Binding> pureBindings(LoxFunction function) {
+        var bindings = new ArrayList<Binding>();
+        return new Purity(function, false, new HashSet<>(), bindings).check() ? bindings : null;
+    }
+
+    static boolean isParallelSafe(LoxFunction function) {
+        return new Purity(function, true, new HashSet<>(), new ArrayList<>()).check();
+    }
+
+    private boolean check() {
+        // A function already being checked further up is assumed pure, which is what
+        // lets recursive functions through.
+        if (!this.visiting.add(this.function)) {
+            return true;
+        }
+
+        var frame = new HashSet<String>();
+        for (var param : this.function.declaration().params()) {
+            frame.add(param.lexeme());
+        }
+
+        this.scopes.push(frame);
+        return this.all(this.function.declaration().body());
+    }
+
+    // Checks statements in a scope of their own, so what they declare is gone afterwards.
+    private boolean scoped(List<Stmt> statements) {
+        this.scopes.push(new HashSet<>());
+        var result = this.all(statements);
+        this.scopes.pop();
+
+        return result;
+    }
+
+    private boolean scoped(Stmt statement) {
+        return this.scoped(List.of(statement));
+    }
+
+    private boolean isLocal(Token name) {
+        for (var scope : this.scopes) {
+            if (scope.contains(name.lexeme())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean all(List<Stmt> statements) {
+        for (var statement : statements) {
+            if (!statement.accept(this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isPureValue(Object value) {
+        if (value instanceof LoxFunction callee) {
+            return new Purity(callee, this.parallel, this.visiting, this.bindings).check();
+        }
+
+        if (value instanceof NativeFunction callee) {
+            return (this.parallel ? PARALLEL_NATIVES : PURE_NATIVES).contains(callee.name());
+        }
+
+        // Memoized functions update their cache on every call, so they don't count as parallel safe.
+        return value instanceof MemoizedFunction && !this.parallel;
+    }
+
+    @Override
+    public Boolean visitAssignExpr(Expr.Assign expr) {
+        return this.isLocal(expr.name()) && expr.value().accept(this);
+    }
+
+    @Override
+    public Boolean visitBinaryExpr(Expr.Binary expr) {
+        return expr.left().accept(this) && expr.right().accept(this);
+    }
+
+    @Override
+    public Boolean visitCallExpr(Expr.Call expr) {
+        // A local, such as a parameter, could hold any function once the call runs, so only calls
+        // to names resolved in the closure can be checked.
+        if (!(expr.callee() instanceof Expr.Variable callee) || this.isLocal(callee.name()) || !callee.accept(this)) {
+            return false;
+        }
+
+        for (var argument : expr.arguments()) {
+            if (!argument.accept(this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Boolean visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression().accept(this);
+    }
+
+    @Override
+    public Boolean visitIndexExpr(Expr.Index expr) {
+        return expr.object().accept(this) && expr.index().accept(this);
+    }
+
+    @Override
+    public Boolean visitIndexSetExpr(Expr.IndexSet expr) {
+        return false;
+    }
+
+    @Override
+    public Boolean visitLiteralExpr(Expr.Literal expr) {
+        return true;
+    }
+
+    @Override
+    public Boolean visitLogicalExpr(Expr.Logical expr) {
+        return expr.left().accept(this) && expr.right().accept(this);
+    }
+
+    @Override
+    public Boolean visitUnaryExpr(Expr.Unary expr) {
+        return expr.right().accept(this);
+    }
+
+    @Override
+    public Boolean visitVariableExpr(Expr.Variable expr) {
+        if (this.isLocal(expr.name())) {
+            return true;
+        }
+
+        // Anything else is shared state, which is only safe to read when it is itself a pure function.
+        // Parallel code may also read shared data; only calling into it has to be checked.
+        var closure = this.function.closure();
+
+        if (!closure.contains(expr.name())) {
+            return false;
+        }
+
+        var value = closure.get(expr.name());
+        this.bindings.add(new Binding(closure, expr.name(), value));
+
+        return this.parallel && !(value instanceof LoxCallable) || this.isPureValue(value);
+    }
+
+    @Override
+    public Boolean visitBlockStmt(Stmt.Block stmt) {
+        return this.scoped(stmt.statements());
+    }
+
+    @Override
+    public Boolean visitExpressionStmt(Stmt.Expression stmt) {
+        return stmt.expression().accept(this);
+    }
+
+    @Override
+    public Boolean visitForStmt(Stmt.For stmt) {
+        if (!stmt.start().accept(this)) {
+            return false;
+        }
+
+        this.scopes.push(new HashSet<>(Set.of(stmt.name().lexeme())));
+        var result = stmt.limit().accept(this) && this.all(stmt.body());
+        this.scopes.pop();
+
+        return result;
+    }
+
+    @Override
+    public Boolean visitFunctionStmt(Stmt.Function stmt) {
+        return false;
+    }
+
+    @Override
+    public Boolean visitIfStmt(Stmt.If stmt) {
+        return stmt.condition().accept(this)
+                && this.scoped(stmt.thenBranch())
+                && (stmt.elseBranch() == null || this.scoped(stmt.elseBranch()));
+    }
+
+    @Override
+    public Boolean visitPrintStmt(Stmt.Print stmt) {
+        return this.parallel && stmt.expression().accept(this);
+    }
+
+    @Override
+    public Boolean visitReturnStmt(Stmt.Return stmt) {
+        return stmt.value() == null || stmt.value().accept(this);
+    }
+
+    @Override
+    public Boolean visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer() != null && !stmt.initializer().accept(this)) {
+            return false;
+        }
+
+        this.scopes.peek().add(stmt.name().lexeme());
+        return true;
+    }
+
+    @Override
+    public Boolean visitWhileStmt(Stmt.While stmt) {
+        return stmt.condition().accept(this) && this.scoped(stmt.body());
+    }
+
+    // Calling a generator function hands out a new generator each time, which is neither pure nor
+    // worth running in parallel.
+    @Override
+    public Boolean visitYieldStmt(Stmt.Yield stmt) {
+        return false;
+    }
+}
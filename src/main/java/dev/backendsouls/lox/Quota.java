@@ -0,0 +1,119 @@
+package dev.backendsouls.lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A cap on the memory one script keeps, so a runaway tenant fails with a runtime error instead of
+// filling the heap everyone shares. The interpreter charges what it allocates on the script's
+// behalf: call frames, closures, concatenated strings and collection storage. Charges are rough
+// estimates of the JVM's footprint, and they are taken before allocating, so a single string or
+// array bigger than the whole quota is refused rather than built. Call frames are handed back when
+// the call returns. Workers and tasks charge the quota of the script that started them.
+//
+// Most of what a script allocates is garbage soon after, so charges only say when to look. Once a
+// script's charges pass its limit, the quota collects the heap and measures what survived above
+// what the JVM held before the first script started. The heap can't tell scripts apart, so each
+// script running with a quota is given an equal share of that. A share over the limit fails the
+// charge; otherwise the script's count restarts from its share. The collection pauses every script,
+// and with -XX:+DisableExplicitGC the measure includes garbage.
+final class Quota {
+    // Megabytes each script may keep; 0 means unlimited.
+    static final long LIMIT = Long.getLong("jlox.quota", 0) << 20;
+
+    static final long FRAME = 128;
+
+    static final long CLOSURE = 64;
+
+    static final long LIST = 96;
+
+    static final long MAP = 192;
+
+    // Per slot, allowing for spare capacity.
+    static final long ELEMENT = 16;
+
+    static final long ENTRY = 32;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Scripts whose quota is still reachable; a finished script's goes once it is collected.
+    private static final AtomicInteger SCRIPTS = new AtomicInteger();
+
+    // One collection at a time, however many scripts pass their limit together. Not a monitor,
+    // since tasks on virtual threads charge too.
+    private static final ReentrantLock SETTLING = new ReentrantLock();
+
+    // Heap in use after a collection, before the first script with a quota started.
+    private static long baseline = -1;
+
+    private final long limit;
+
+    private final AtomicLong used = new AtomicLong();
+
+    private Quota(long limit) {
+        this.limit = limit;
+        SCRIPTS.incrementAndGet();
+        CLEANER.register(this, SCRIPTS::decrementAndGet);
+    }
+
+    static Quota create() {
+        if (LIMIT <= 0) {
+            return null;
+        }
+
+        SETTLING.lock();
+        try {
+            if (baseline < 0) {
+                baseline = liveHeap();
+            }
+        } finally {
+            SETTLING.unlock();
+        }
+
+        return new Quota(LIMIT);
+    }
+
+    static long string(long length) {
+        return 40 + 2 * length;
+    }
+
+    // False, with nothing charged, once the script keeps more than its limit.
+    boolean charge(long bytes) {
+        if (this.used.addAndGet(bytes) <= this.limit || bytes <= this.limit && this.settle(bytes)) {
+            return true;
+        }
+
+        this.used.addAndGet(-bytes);
+        return false;
+    }
+
+    void release(long bytes) {
+        this.used.addAndGet(-bytes);
+    }
+
+    // Restarts the count from this script's share of the live heap, plus the charge being made;
+    // false when that is over the limit.
+    private boolean settle(long bytes) {
+        SETTLING.lock();
+
+        try {
+            var share = Math.max(0, liveHeap() - baseline) / Math.max(1, SCRIPTS.get());
+
+            if (share + bytes > this.limit) {
+                return false;
+            }
+
+            this.used.set(share + bytes);
+            return true;
+        } finally {
+            SETTLING.unlock();
+        }
+    }
+
+    private static long liveHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -28,16 +28,41 @@ public class Scanner {
         keywords.put("true", TokenType.TRUE);
         keywords.put("var", TokenType.VAR);
         keywords.put("while", TokenType.WHILE);
+        keywords.put("yield", TokenType.YIELD);
     }
 
     private final String source;
+    private final ErrorReporter reporter;
     private final List<Token> tokens = new ArrayList<>();
-    private int line = 1;
+    // Null unless lines are counted from a chunk's origin, in which case line is relative to it.
+    private final Token.Origin origin;
+    private int line;
     private int current = 0;
     private int start = 0;
+    private boolean failed = false;
 
     public Scanner(final String source) {
+        this(source, 1);
+    }
+
+    // For scanning a fragment of a larger file, so tokens still carry the file's line numbers.
+    public Scanner(final String source, final int line) {
+        this(source, line, Lox.reporter());
+    }
+
+    public Scanner(final String source, final int line, final ErrorReporter reporter) {
         this.source = source;
+        this.line = line;
+        this.reporter = reporter;
+        this.origin = null;
+    }
+
+    // For a chunk that may move within its file; see Token.
+    Scanner(final String source, final Token.Origin origin, final ErrorReporter reporter) {
+        this.source = source;
+        this.line = 0;
+        this.reporter = reporter;
+        this.origin = origin;
     }
 
     public List<Token> scanTokens() {
@@ -48,7 +73,7 @@ public class Scanner {
             this.scanToken();
         }
 
-        this.tokens.add(new Token(TokenType.EOF, "", null, this.line));
+        this.tokens.add(new Token(TokenType.EOF, "", null, this.line, this.origin));
 
         return this.tokens;
     }
@@ -73,6 +98,12 @@ public class Scanner {
             case '}':
                 this.addToken(TokenType.RIGHT_BRACE);
                 break;
+            case '[':
+                this.addToken(TokenType.LEFT_BRACKET);
+                break;
+            case ']':
+                this.addToken(TokenType.RIGHT_BRACKET);
+                break;
             case ',':
                 this.addToken(TokenType.COMMA);
                 break;
@@ -91,6 +122,9 @@ public class Scanner {
             case '*':
                 this.addToken(TokenType.STAR);
                 break;
+            case ':':
+                this.addToken(TokenType.COLON);
+                break;
             case '!':
                 this.addToken(this.match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
                 break;
@@ -134,12 +168,22 @@ public class Scanner {
                 } else if (this.isAlpha(c)) {
                     this.identifier();
                 } else {
-                    Lox.error(this.line, "Unexpected character.");
+                    this.error("Unexpected character.");
                 }
                 break;
         }
     }
 
+    // Whether this scanner reported errors; the reporter may have others from elsewhere.
+    boolean failed() {
+        return this.failed;
+    }
+
+    private void error(String message) {
+        this.failed = true;
+        this.reporter.error(this.origin == null ? this.line : this.origin.line + this.line, message);
+    }
+
     private void identifier() {
         while (this.isAlphanumeric(this.peek())) {
             this.advance();
@@ -152,7 +196,10 @@ public class Scanner {
             tokenType = TokenType.IDENTIFIER;
         }
 
-        this.addToken(tokenType);
+        // Interned in the JVM's string table, so scripts run side by side share one copy of each
+        // name and environment lookups mostly compare strings by identity. The table drops names
+        // nothing refers to any more, so a long-running daemon doesn't keep every name it has seen.
+        this.tokens.add(new Token(tokenType, text.intern(), null, this.line, this.origin));
     }
 
     private boolean isAlphanumeric(char c) {
@@ -193,11 +240,15 @@ public class Scanner {
 
     private void string() {
         while (this.peek() != '"' && !this.isAtEnd()) {
+            if (this.peek() == '\n') {
+                this.line++;
+            }
+
             this.advance();
         }
 
         if (this.isAtEnd()) {
-            Lox.error(this.line, "Unterminated string.");
+            this.error("Unterminated string.");
             return;
         }
 
@@ -243,6 +294,6 @@ public class Scanner {
     private void addToken(TokenType tokenType, Object literal) {
 
         String text = this.source.substring(this.start, this.current);
-        this.tokens.add(new Token(tokenType, text, literal, this.line));
+        this.tokens.add(new Token(tokenType, text, literal, this.line, this.origin));
     }
 }
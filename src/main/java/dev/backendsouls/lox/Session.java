@@ -0,0 +1,148 @@
+package dev.backendsouls.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// One interactive session: its own globals, error reporter and output, so several can run side
+// by side. Input is buffered until brackets and strings are balanced, which lets a function be
+// typed over several lines.
+//
+// Script files run in a session are kept parsed, so running one again after editing it only
+// reparses the declarations that changed (see IncrementalParser).
+public class Session {
+    private static final int CACHE_CAPACITY = 256;
+
+    // Parsed snippets shared by every session. Only snippets that parsed cleanly are kept, and the
+    // statements are never mutated, so handing the same list to several sessions is safe.
+    private static final Map<String, List<Stmt>> parsed = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Stmt>> eldest) {
+            return this.size() > CACHE_CAPACITY;
+        }
+    };
+
+    private final PrintStream err;
+
+    private final ErrorReporter reporter;
+
+    private final StringBuilder pending = new StringBuilder();
+
+    private final Map<Path, IncrementalParser> documents = new HashMap<>();
+
+    private Interpreter interpreter;
+
+    public Session(PrintStream out, PrintStream err) {
+        this.err = err;
+        this.reporter = new ErrorReporter(err);
+        this.interpreter = new Interpreter(this.reporter, out);
+    }
+
+    public boolean isContinuation() {
+        return !this.pending.isEmpty();
+    }
+
+    public void accept(String line) {
+        this.pending.append(line).append('\n');
+
+        if (SourceSplitter.isOpen(this.pending)) {
+            return;
+        }
+
+        var source = this.pending.toString();
+        this.pending.setLength(0);
+        this.run(source);
+    }
+
+    public void run(String source) {
+        this.reporter.reset();
+
+        var statements = parse(source, this.reporter);
+
+        if (statements != null) {
+            this.interpreter.interpret(statements);
+        }
+    }
+
+    public void runFile(Path path) {
+        this.reporter.reset();
+
+        String source;
+        try {
+            source = Files.readString(path, Charset.defaultCharset());
+        } catch (IOException error) {
+            this.err.println("Could not run file: " + error.getMessage());
+            return;
+        }
+
+        var document = this.documents.get(path);
+        if (document == null) {
+            document = new IncrementalParser(source, this.reporter);
+            this.documents.put(path, document);
+        } else {
+            document.replace(source);
+        }
+
+        var statements = document.statements();
+
+        if (!this.reporter.hadError()) {
+            TypeChecker.check(statements, this.reporter);
+        }
+
+        if (!this.reporter.hadError()) {
+            this.interpreter.interpret(statements);
+        }
+    }
+
+    public void save(Path path) {
+        try {
+            Snapshot.save(this.interpreter.globals(), path);
+        } catch (IOException | IllegalArgumentException error) {
+            this.err.println("Could not save session: " + error.getMessage());
+        }
+    }
+
+    public void restore(Path path) {
+        try {
+            var globals = Snapshot.load(path);
+            this.interpreter = new Interpreter(globals, this.reporter, this.interpreter.out());
+            this.pending.setLength(0);
+        } catch (IOException | RuntimeException error) {
+            this.err.println("Could not load session: " + error.getMessage());
+        }
+    }
+
+    // Also used by Daemon, which runs whole scripts through the same cache.
+    static List<Stmt> parse(String source, ErrorReporter reporter) {
+        synchronized (Session.parsed) {
+            var statements = Session.parsed.get(source);
+
+            if (statements != null) {
+                return statements;
+            }
+        }
+
+        var tokens = new Scanner(source, 1, reporter).scanTokens();
+        var statements = new Parser(tokens, reporter).parse();
+
+        if (!reporter.hadError()) {
+            TypeChecker.check(statements, reporter);
+        }
+
+        if (reporter.hadError()) {
+            return null;
+        }
+
+        synchronized (Session.parsed) {
+            Session.parsed.put(source, statements);
+        }
+
+        return statements;
+    }
+}
@@ -0,0 +1,24 @@
+package dev.backendsouls.lox;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Saves a global environment, with every function, list and map reachable from it, to a file and
+// reads it back. Natives are saved by name and resolved again on load. Loading maps the file
+// instead of copying it onto the heap, so restoring a large image costs little more than decoding.
+public final class Snapshot {
+    private Snapshot() {
+    }
+
+    public static void save(Environment globals, Path path) throws IOException {
+        Files.write(path, SnapshotWriter.write(globals));
+    }
+
+    public static Environment load(Path path) throws IOException {
+        try (var channel = FileChannel.open(path)) {
+            return SnapshotReader.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.backendsouls.lox;
+
+// Tags of the snapshot encoding shared by SnapshotWriter and SnapshotReader. Values, AST nodes and
+// runtime objects share one tag space; objects with identity (environments, lists, maps,
+// functions and function declarations) are written once and referenced by id afterwards.
+final class SnapshotFormat {
+    static final int MAGIC = 0x4C4F5853;
+    static final int VERSION = 2;
+
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int NUMBER = 3;
+    static final int STRING = 4;
+    static final int REF = 5;
+
+    static final int ENVIRONMENT = 10;
+    static final int LIST = 11;
+    static final int MAP = 12;
+    static final int FUNCTION = 13;
+    static final int NATIVE = 14;
+    static final int MEMOIZED = 15;
+    static final int DECLARATION = 16;
+    static final int NUMBERS = 17;
+
+    static final int ASSIGN = 20;
+    static final int BINARY = 21;
+    static final int CALL = 22;
+    static final int GROUPING = 23;
+    static final int INDEX = 24;
+    static final int INDEX_SET = 25;
+    static final int LITERAL = 26;
+    static final int LOGICAL = 27;
+    static final int UNARY = 28;
+    static final int VARIABLE = 29;
+
+    static final int BLOCK = 40;
+    static final int EXPRESSION = 41;
+    static final int IF = 42;
+    static final int PRINT = 43;
+    static final int RETURN = 44;
+    static final int VAR = 45;
+    static final int WHILE = 46;
+    static final int FOR = 47;
+    static final int YIELD = 48;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,298 @@
+package dev.backendsouls.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.backendsouls.lox.SnapshotFormat.*;
+
+// Reads back what SnapshotWriter wrote. Objects get their id as soon as their tag is read, before
+// their contents, so the ids line up with the order the writer handed them out in.
+final class SnapshotReader {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final ByteBuffer in;
+
+    private final List<Object> objects = new ArrayList<>();
+
+    private final List<String> strings = new ArrayList<>();
+
+    private SnapshotReader(ByteBuffer in) {
+        this.in = in;
+        this.objects.add(null);
+    }
+
+    static Environment read(ByteBuffer in) {
+        var reader = new SnapshotReader(in);
+
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a Lox snapshot.");
+        }
+
+        if (in.getInt() != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version.");
+        }
+
+        var globals = reader.readEnvironment();
+        reader.readFills();
+
+        return globals;
+    }
+
+    private void readFills() {
+        for (var id = this.readVarInt(); id != 0; id = this.readVarInt()) {
+            var environment = (Environment) this.objects.get(id);
+            var count = this.readVarInt();
+
+            for (var i = 0; i < count; i++) {
+                var name = this.readString();
+                environment.define(name, this.readValue());
+            }
+        }
+    }
+
+    private int reserve() {
+        this.objects.add(null);
+        return this.objects.size() - 1;
+    }
+
+    private <T> T register(int id, T object) {
+        this.objects.set(id, object);
+        return object;
+    }
+
+    private Environment readEnvironment() {
+        var tag = this.readByte();
+
+        return switch (tag) {
+            case NULL -> null;
+            case REF -> (Environment) this.objects.get(this.readVarInt());
+            case ENVIRONMENT -> {
+                var id = this.reserve();
+                var enclosing = this.readEnvironment();
+                yield this.register(id, enclosing == null ? new Environment() : new Environment(enclosing));
+            }
+            default -> throw this.unexpected(tag);
+        };
+    }
+
+    private Object readValue() {
+        var tag = this.readByte();
+
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case NUMBER:
+                return this.in.getDouble();
+            case STRING:
+                return this.readString();
+            case REF:
+                return this.objects.get(this.readVarInt());
+            case NATIVE: {
+                var name = this.readString();
+                var function = Natives.get(name);
+
+                if (function == null) {
+                    throw new IllegalArgumentException("Unknown native function '" + name + "'.");
+                }
+
+                return function;
+            }
+            case LIST: {
+                var list = this.register(this.reserve(), new LoxList());
+                var size = this.readVarInt();
+
+                for (var i = 0; i < size; i++) {
+                    list.add(this.readValue());
+                }
+
+                return list;
+            }
+            case NUMBERS: {
+                var id = this.reserve();
+                var numbers = new double[this.readVarInt()];
+                this.in.asDoubleBuffer().get(numbers);
+                this.in.position(this.in.position() + numbers.length * Double.BYTES);
+
+                return this.register(id, new LoxList(numbers, numbers.length));
+            }
+            case MAP: {
+                var map = this.register(this.reserve(), new LoxMap());
+                var size = this.readVarInt();
+
+                for (var i = 0; i < size; i++) {
+                    var key = this.readValue();
+                    map.put(key, this.readValue());
+                }
+
+                return map;
+            }
+            case FUNCTION: {
+                var id = this.reserve();
+                var declaration = this.readDeclaration(this.readByte());
+                var closure = this.readEnvironment();
+
+                return this.register(id, new LoxFunction(declaration, closure));
+            }
+            case MEMOIZED: {
+                var id = this.reserve();
+                var capacity = this.readVarInt();
+                var function = (LoxFunction) this.readValue();
+
+                return this.register(id, new MemoizedFunction(function, capacity));
+            }
+            default:
+                throw this.unexpected(tag);
+        }
+    }
+
+    private Stmt.Function readDeclaration(int tag) {
+        if (tag == REF) {
+            return (Stmt.Function) this.objects.get(this.readVarInt());
+        }
+
+        if (tag != DECLARATION) {
+            throw this.unexpected(tag);
+        }
+
+        var id = this.reserve();
+        var name = this.readToken();
+        var params = this.readTokens();
+        var body = this.readStatements();
+        var types = new ArrayList<Token>(params.size());
+
+        for (var i = 0; i < params.size(); i++) {
+            types.add(this.readType());
+        }
+
+        return this.register(id, new Stmt.Function(name, params, body, types, this.readType()));
+    }
+
+    private Token readType() {
+        return this.readByte() == NULL ? null : this.readToken();
+    }
+
+    private Token readToken() {
+        var type = TOKEN_TYPES[this.readVarInt()];
+        var lexeme = this.readString();
+        var literal = this.readValue();
+
+        return new Token(type, lexeme, literal, this.readVarInt());
+    }
+
+    private List<Token> readTokens() {
+        var count = this.readVarInt();
+        var tokens = new ArrayList<Token>(count);
+
+        for (var i = 0; i < count; i++) {
+            tokens.add(this.readToken());
+        }
+
+        return tokens;
+    }
+
+    private List<Stmt> readStatements() {
+        var count = this.readVarInt();
+        var statements = new ArrayList<Stmt>(count);
+
+        for (var i = 0; i < count; i++) {
+            statements.add(this.readStmt());
+        }
+
+        return statements;
+    }
+
+    private List<Expr> readExprs() {
+        var count = this.readVarInt();
+        var exprs = new ArrayList<Expr>(count);
+
+        for (var i = 0; i < count; i++) {
+            exprs.add(this.readExpr());
+        }
+
+        return exprs;
+    }
+
+    private Expr readExpr() {
+        var tag = this.readByte();
+
+        return switch (tag) {
+            case NULL -> null;
+            case ASSIGN -> new Expr.Assign(this.readToken(), this.readExpr());
+            case BINARY -> new Expr.Binary(this.readExpr(), this.readToken(), this.readExpr());
+            case CALL -> new Expr.Call(this.readExpr(), this.readToken(), this.readExprs());
+            case GROUPING -> new Expr.Grouping(this.readExpr());
+            case INDEX -> new Expr.Index(this.readExpr(), this.readToken(), this.readExpr());
+            case INDEX_SET -> new Expr.IndexSet(this.readExpr(), this.readToken(), this.readExpr(), this.readExpr());
+            case LITERAL -> new Expr.Literal(this.readValue());
+            case LOGICAL -> new Expr.Logical(this.readExpr(), this.readToken(), this.readExpr());
+            case UNARY -> new Expr.Unary(this.readToken(), this.readExpr());
+            case VARIABLE -> new Expr.Variable(this.readToken());
+            default -> throw this.unexpected(tag);
+        };
+    }
+
+    private Stmt readStmt() {
+        var tag = this.readByte();
+
+        return switch (tag) {
+            case NULL -> null;
+            case BLOCK -> new Stmt.Block(this.readStatements());
+            case EXPRESSION -> new Stmt.Expression(this.readExpr());
+            case DECLARATION, REF -> this.readDeclaration(tag);
+            case IF -> new Stmt.If(this.readExpr(), this.readStmt(), this.readStmt());
+            case PRINT -> new Stmt.Print(this.readExpr());
+            case RETURN -> new Stmt.Return(this.readToken(), this.readExpr());
+            case VAR -> new Stmt.Var(this.readToken(), this.readExpr(), this.readType());
+            case WHILE -> new Stmt.While(this.readExpr(), this.readStmt());
+            case YIELD -> new Stmt.Yield(this.readToken(), this.readExpr());
+            case FOR -> new Stmt.For(this.readToken(), this.readExpr(), this.readToken(), this.readExpr(),
+                    this.readByte() == TRUE, this.in.getDouble(), this.readStatements());
+            default -> throw this.unexpected(tag);
+        };
+    }
+
+    private IllegalArgumentException unexpected(int tag) {
+        return new IllegalArgumentException("Corrupt snapshot: unexpected tag " + tag + " at " + (this.in.position() - 1) + ".");
+    }
+
+    // Decoding
+
+    private String readString() {
+        var index = this.readVarInt();
+
+        if (index < this.strings.size()) {
+            return this.strings.get(index);
+        }
+
+        var bytes = new byte[this.readVarInt()];
+        this.in.get(bytes);
+
+        var string = new String(bytes, StandardCharsets.UTF_8);
+        this.strings.add(string);
+
+        return string;
+    }
+
+    private int readByte() {
+        return this.in.get() & 0xFF;
+    }
+
+    private int readVarInt() {
+        var value = 0;
+
+        for (var shift = 0; ; shift += 7) {
+            var b = this.readByte();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
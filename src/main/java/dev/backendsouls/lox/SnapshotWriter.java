@@ -0,0 +1,443 @@
+package dev.backendsouls.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dev.backendsouls.lox.SnapshotFormat.*;
+
+// Serializes a global environment together with everything reachable from it: nested
+// environments, lists, maps and functions down to their declarations. Environments are written
+// as empty shells first and filled in a section of their own afterwards, because a function
+// stored in an environment usually closes over that same environment.
+final class SnapshotWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private final Map<Object, Integer> ids = new IdentityHashMap<>();
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    private final Deque<Environment> unfilled = new ArrayDeque<>();
+
+    private SnapshotWriter() {
+    }
+
+    static byte[] write(Environment globals) {
+        var writer = new SnapshotWriter();
+        writer.writeInt(MAGIC);
+        writer.writeInt(VERSION);
+        writer.writeEnvironment(globals);
+        writer.writeFills();
+
+        return writer.out.toByteArray();
+    }
+
+    private void writeFills() {
+        while (!this.unfilled.isEmpty()) {
+            var environment = this.unfilled.poll();
+            // Globals on a prelude are saved flattened; their own values come last and win.
+            var prelude = environment.prelude();
+            var values = environment.values();
+
+            this.writeVarInt(this.ids.get(environment));
+            this.writeVarInt(prelude.size() + values.size());
+
+            for (var entry : prelude.entrySet()) {
+                this.writeString(entry.getKey());
+                this.writeValue(entry.getValue());
+            }
+
+            for (var entry : values.entrySet()) {
+                this.writeString(entry.getKey());
+                this.writeValue(entry.getValue());
+            }
+        }
+
+        // Ids start at 1, so 0 ends the section.
+        this.writeVarInt(0);
+    }
+
+    // Writes a reference when the object was written before; otherwise assigns it the next id.
+    private boolean writeReference(Object object) {
+        var id = this.ids.get(object);
+
+        if (id != null) {
+            this.writeByte(REF);
+            this.writeVarInt(id);
+            return true;
+        }
+
+        this.ids.put(object, this.ids.size() + 1);
+        return false;
+    }
+
+    private void writeEnvironment(Environment environment) {
+        if (environment == null) {
+            this.writeByte(NULL);
+            return;
+        }
+
+        if (this.writeReference(environment)) {
+            return;
+        }
+
+        this.writeByte(ENVIRONMENT);
+        this.writeEnvironment(environment.enclosing());
+        this.unfilled.add(environment);
+    }
+
+    private void writeValue(Object value) {
+        switch (value) {
+            case null -> this.writeByte(NULL);
+            case Boolean bool -> this.writeByte(bool ? TRUE : FALSE);
+            case Double number -> {
+                this.writeByte(NUMBER);
+                this.writeLong(Double.doubleToRawLongBits(number));
+            }
+            case String string -> {
+                this.writeByte(STRING);
+                this.writeString(string);
+            }
+            case NativeFunction function -> {
+                this.writeByte(NATIVE);
+                this.writeString(function.name());
+            }
+            case LoxList list -> {
+                if (this.writeReference(list)) {
+                    return;
+                }
+
+                // Numeric lists, typically lookup tables, are written as raw doubles.
+                this.writeByte(list.isNumeric() ? NUMBERS : LIST);
+                this.writeVarInt(list.size());
+
+                for (var i = 0; i < list.size(); i++) {
+                    if (list.isNumeric()) {
+                        this.writeLong(Double.doubleToRawLongBits((double) list.get(i)));
+                    } else {
+                        this.writeValue(list.get(i));
+                    }
+                }
+            }
+            case LoxMap map -> {
+                if (this.writeReference(map)) {
+                    return;
+                }
+
+                var keys = map.keys();
+                this.writeByte(MAP);
+                this.writeVarInt(keys.size());
+
+                for (var i = 0; i < keys.size(); i++) {
+                    this.writeValue(keys.get(i));
+                    this.writeValue(map.get(keys.get(i)));
+                }
+            }
+            case LoxFunction function -> {
+                if (this.writeReference(function)) {
+                    return;
+                }
+
+                this.writeByte(FUNCTION);
+                this.writeDeclaration(function.declaration());
+                this.writeEnvironment(function.closure());
+            }
+            case MemoizedFunction function -> {
+                if (this.writeReference(function)) {
+                    return;
+                }
+
+                this.writeByte(MEMOIZED);
+                this.writeVarInt(function.capacity());
+                this.writeValue(function.function());
+            }
+            default -> throw new IllegalArgumentException("Can't save " + LoxRuntime.stringify(value) + ".");
+        }
+    }
+
+    private void writeDeclaration(Stmt.Function declaration) {
+        if (this.writeReference(declaration)) {
+            return;
+        }
+
+        this.writeByte(DECLARATION);
+        this.writeToken(declaration.name());
+        this.writeTokens(declaration.params());
+        this.writeStatements(declaration.body());
+
+        for (var type : declaration.types()) {
+            this.writeType(type);
+        }
+
+        this.writeType(declaration.returnType());
+    }
+
+    private void writeToken(Token token) {
+        this.writeVarInt(token.tokenType().ordinal());
+        this.writeString(token.lexeme());
+        this.writeValue(token.literal());
+        this.writeVarInt(token.line());
+    }
+
+    // A type annotation, which may be missing.
+    private void writeType(Token type) {
+        if (type == null) {
+            this.writeByte(NULL);
+            return;
+        }
+
+        this.writeByte(TRUE);
+        this.writeToken(type);
+    }
+
+    private void writeTokens(List<Token> tokens) {
+        this.writeVarInt(tokens.size());
+
+        for (var token : tokens) {
+            this.writeToken(token);
+        }
+    }
+
+    private void writeExpr(Expr expr) {
+        if (expr == null) {
+            this.writeByte(NULL);
+            return;
+        }
+
+        expr.accept(this);
+    }
+
+    private void writeStmt(Stmt stmt) {
+        if (stmt == null) {
+            this.writeByte(NULL);
+            return;
+        }
+
+        stmt.accept(this);
+    }
+
+    private void writeStatements(List<Stmt> statements) {
+        this.writeVarInt(statements.size());
+
+        for (var statement : statements) {
+            this.writeStmt(statement);
+        }
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        this.writeByte(ASSIGN);
+        this.writeToken(expr.name());
+        this.writeExpr(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        this.writeByte(BINARY);
+        this.writeExpr(expr.left());
+        this.writeToken(expr.operator());
+        this.writeExpr(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        this.writeByte(CALL);
+        this.writeExpr(expr.callee());
+        this.writeToken(expr.paren());
+        this.writeVarInt(expr.arguments().size());
+
+        for (var argument : expr.arguments()) {
+            this.writeExpr(argument);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        this.writeByte(GROUPING);
+        this.writeExpr(expr.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        this.writeByte(INDEX);
+        this.writeExpr(expr.object());
+        this.writeToken(expr.bracket());
+        this.writeExpr(expr.index());
+        return null;
+    }
+
+    @Override
+    public Void visitIndexSetExpr(Expr.IndexSet expr) {
+        this.writeByte(INDEX_SET);
+        this.writeExpr(expr.object());
+        this.writeToken(expr.bracket());
+        this.writeExpr(expr.index());
+        this.writeExpr(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        this.writeByte(LITERAL);
+        this.writeValue(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        this.writeByte(LOGICAL);
+        this.writeExpr(expr.left());
+        this.writeToken(expr.operator());
+        this.writeExpr(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        this.writeByte(UNARY);
+        this.writeToken(expr.operator());
+        this.writeExpr(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        this.writeByte(VARIABLE);
+        this.writeToken(expr.name());
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        this.writeByte(BLOCK);
+        this.writeStatements(stmt.statements());
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        this.writeByte(EXPRESSION);
+        this.writeExpr(stmt.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        this.writeByte(FOR);
+        this.writeToken(stmt.name());
+        this.writeExpr(stmt.start());
+        this.writeToken(stmt.operator());
+        this.writeExpr(stmt.limit());
+        this.writeByte(stmt.invariant() ? TRUE : FALSE);
+        this.writeLong(Double.doubleToRawLongBits(stmt.step()));
+        this.writeStatements(stmt.body());
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        this.writeDeclaration(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        this.writeByte(IF);
+        this.writeExpr(stmt.condition());
+        this.writeStmt(stmt.thenBranch());
+        this.writeStmt(stmt.elseBranch());
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        this.writeByte(PRINT);
+        this.writeExpr(stmt.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        this.writeByte(RETURN);
+        this.writeToken(stmt.keyword());
+        this.writeExpr(stmt.value());
+        return null;
+    }
+
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        this.writeByte(YIELD);
+        this.writeToken(stmt.keyword());
+        this.writeExpr(stmt.value());
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        this.writeByte(VAR);
+        this.writeToken(stmt.name());
+        this.writeExpr(stmt.initializer());
+        this.writeType(stmt.type());
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        this.writeByte(WHILE);
+        this.writeExpr(stmt.condition());
+        this.writeStmt(stmt.body());
+        return null;
+    }
+
+    // Encoding
+
+    // Each distinct string is written once; later occurrences are just its index.
+    private void writeString(String string) {
+        var index = this.strings.get(string);
+
+        if (index != null) {
+            this.writeVarInt(index);
+            return;
+        }
+
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        this.strings.put(string, this.strings.size());
+        this.writeVarInt(this.strings.size() - 1);
+        this.writeVarInt(bytes.length);
+        this.out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeByte(int value) {
+        this.out.write(value);
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            this.out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        this.out.write(value);
+    }
+
+    private void writeInt(int value) {
+        for (var shift = 24; shift >= 0; shift -= 8) {
+            this.out.write(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        this.writeInt((int) (value >>> 32));
+        this.writeInt((int) value);
+    }
+}
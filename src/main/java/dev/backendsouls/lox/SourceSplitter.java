@@ -0,0 +1,122 @@
+package dev.backendsouls.lox;
+
+// Finds where top-level declarations end without scanning or parsing: a declaration ends after a
+// ';' or '}' that isn't nested in braces, parentheses or brackets, unless an 'else' follows it.
+// Strings and comments are skipped so their contents can't end anything.
+final class SourceSplitter {
+    private SourceSplitter() {
+    }
+
+    // Offset just past the declaration that starts at (or after whitespace following) start.
+    static int declarationEnd(CharSequence source, int start) {
+        var depth = 0;
+
+        for (var i = start; i < source.length(); i++) {
+            switch (source.charAt(i)) {
+                case '"' -> {
+                    i = skipString(source, i);
+                }
+                case '/' -> {
+                    if (i + 1 < source.length() && source.charAt(i + 1) == '/') {
+                        i = skipComment(source, i);
+                    }
+                }
+                case '(', '[', '{' -> depth++;
+                case ')', ']' -> depth--;
+                case '}' -> {
+                    depth--;
+
+                    if (depth <= 0 && !startsWithElse(source, i + 1)) {
+                        return i + 1;
+                    }
+                }
+                case ';' -> {
+                    if (depth <= 0 && !startsWithElse(source, i + 1)) {
+                        return i + 1;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        return source.length();
+    }
+
+    // True while the text leaves a string or a bracket open, i.e. more input must follow before it
+    // can be parsed. Used to buffer multi-line REPL input.
+    static boolean isOpen(CharSequence source) {
+        var depth = 0;
+
+        for (var i = 0; i < source.length(); i++) {
+            switch (source.charAt(i)) {
+                case '"' -> {
+                    i = skipString(source, i);
+
+                    if (i >= source.length()) {
+                        return true;
+                    }
+                }
+                case '/' -> {
+                    if (i + 1 < source.length() && source.charAt(i + 1) == '/') {
+                        i = skipComment(source, i);
+                    }
+                }
+                case '(', '[', '{' -> depth++;
+                case ')', ']', '}' -> depth--;
+                default -> {
+                }
+            }
+        }
+
+        return depth > 0;
+    }
+
+    private static int skipBlank(CharSequence source, int i) {
+        while (i < source.length()) {
+            var c = source.charAt(i);
+
+            if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+                i = skipComment(source, i) + 1;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                break;
+            }
+        }
+
+        return i;
+    }
+
+    private static int skipString(CharSequence source, int i) {
+        i++;
+
+        while (i < source.length() && source.charAt(i) != '"') {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipComment(CharSequence source, int i) {
+        while (i < source.length() && source.charAt(i) != '\n') {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static boolean startsWithElse(CharSequence source, int i) {
+        i = skipBlank(source, i);
+
+        if (i + 4 > source.length() || !source.subSequence(i, i + 4).toString().equals("else")) {
+            return false;
+        }
+
+        return i + 4 == source.length() || !isIdentifierPart(source.charAt(i + 4));
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
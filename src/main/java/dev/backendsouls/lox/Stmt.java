@@ -2,19 +2,37 @@ package dev.backendsouls.lox;
 
 import java.util.List;
 
-public interface Stmt {
+public sealed interface Stmt {
     interface Visitor<R> {
         R visitBlockStmt(Block stmt);
         R visitExpressionStmt(Expression stmt);
+        R visitForStmt(For stmt);
         R visitFunctionStmt(Function stmt);
         R visitIfStmt(If stmt);
         R visitPrintStmt(Print stmt);
         R visitReturnStmt(Return stmt);
         R visitVarStmt(Var stmt);
         R visitWhileStmt(While stmt);
+        R visitYieldStmt(Yield stmt);
     }
 
+    int BLOCK = 0;
+    int EXPRESSION = 1;
+    int FOR = 2;
+    int FUNCTION = 3;
+    int IF = 4;
+    int PRINT = 5;
+    int RETURN = 6;
+    int VAR = 7;
+    int WHILE = 8;
+    int YIELD = 9;
+
     record Block(List<Stmt> statements) implements Stmt {
+        @Override
+        public int tag() {
+            return BLOCK;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
@@ -22,13 +40,35 @@ public interface Stmt {
     }
 
     record Expression(Expr expression) implements Stmt {
+        @Override
+        public int tag() {
+            return EXPRESSION;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitExpressionStmt(this);
         }
     }
 
-    record Function(Token name, List<Token> params, List<Stmt> body) implements Stmt {
+    record For(Token name, Expr start, Token operator, Expr limit, boolean invariant, double step, List<Stmt> body) implements Stmt {
+        @Override
+        public int tag() {
+            return FOR;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitForStmt(this);
+        }
+    }
+
+    record Function(Token name, List<Token> params, List<Stmt> body, List<Token> types, Token returnType) implements Stmt {
+        @Override
+        public int tag() {
+            return FUNCTION;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
@@ -36,6 +76,11 @@ public interface Stmt {
     }
 
     record If(Expr condition, Stmt thenBranch, Stmt elseBranch) implements Stmt {
+        @Override
+        public int tag() {
+            return IF;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitIfStmt(this);
@@ -43,6 +88,11 @@ public interface Stmt {
     }
 
     record Print(Expr expression) implements Stmt {
+        @Override
+        public int tag() {
+            return PRINT;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitPrintStmt(this);
@@ -50,13 +100,23 @@ public interface Stmt {
     }
 
     record Return(Token keyword, Expr value) implements Stmt {
+        @Override
+        public int tag() {
+            return RETURN;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitReturnStmt(this);
         }
     }
 
-    record Var(Token name, Expr initializer) implements Stmt {
+    record Var(Token name, Expr initializer, Token type) implements Stmt {
+        @Override
+        public int tag() {
+            return VAR;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
@@ -64,11 +124,61 @@ public interface Stmt {
     }
 
     record While(Expr condition, Stmt body) implements Stmt {
+        @Override
+        public int tag() {
+            return WHILE;
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitWhileStmt(this);
         }
     }
 
+    record Yield(Token keyword, Expr value) implements Stmt {
+        @Override
+        public int tag() {
+            return YIELD;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitYieldStmt(this);
+        }
+    }
+
+    int tag();
+
     <R> R accept(Visitor<R> visitor);
+
+    static <R> R dispatch(Stmt stmt, Visitor<R> visitor) {
+        return switch (stmt.tag()) {
+            case BLOCK -> visitor.visitBlockStmt((Block) stmt);
+            case EXPRESSION -> visitor.visitExpressionStmt((Expression) stmt);
+            case FOR -> visitor.visitForStmt((For) stmt);
+            case FUNCTION -> visitor.visitFunctionStmt((Function) stmt);
+            case IF -> visitor.visitIfStmt((If) stmt);
+            case PRINT -> visitor.visitPrintStmt((Print) stmt);
+            case RETURN -> visitor.visitReturnStmt((Return) stmt);
+            case VAR -> visitor.visitVarStmt((Var) stmt);
+            case WHILE -> visitor.visitWhileStmt((While) stmt);
+            case YIELD -> visitor.visitYieldStmt((Yield) stmt);
+            default -> throw new IllegalStateException("Unknown tag " + stmt.tag());
+        };
+    }
+
+    static <R> R match(Stmt stmt, Visitor<R> visitor) {
+        return switch (stmt) {
+            case Block node -> visitor.visitBlockStmt(node);
+            case Expression node -> visitor.visitExpressionStmt(node);
+            case For node -> visitor.visitForStmt(node);
+            case Function node -> visitor.visitFunctionStmt(node);
+            case If node -> visitor.visitIfStmt(node);
+            case Print node -> visitor.visitPrintStmt(node);
+            case Return node -> visitor.visitReturnStmt(node);
+            case Var node -> visitor.visitVarStmt(node);
+            case While node -> visitor.visitWhileStmt(node);
+            case Yield node -> visitor.visitYieldStmt(node);
+        };
+    }
 }
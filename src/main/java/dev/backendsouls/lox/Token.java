@@ -1,6 +1,42 @@
 package dev.backendsouls.lox;
 
-public record Token(TokenType tokenType, String lexeme, Object literal, int line) {
+import java.util.Objects;
+
+// Tokens scanned for IncrementalParser count their line from an Origin, the first line of their
+// chunk, so moving a chunk down the file moves its tokens without touching them. Other tokens have
+// no origin and an absolute line. Equality compares the absolute line; the hash leaves it out, since
+// it can change while the token, or a node holding it, is a key.
+public record Token(TokenType tokenType, String lexeme, Object literal, int relativeLine, Origin origin) {
+    public static final class Origin {
+        int line;
+
+        Origin(int line) {
+            this.line = line;
+        }
+    }
+
+    public Token(TokenType tokenType, String lexeme, Object literal, int line) {
+        this(tokenType, lexeme, literal, line, null);
+    }
+
+    public int line() {
+        return this.origin == null ? this.relativeLine : this.origin.line + this.relativeLine;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Token token
+                && this.tokenType == token.tokenType
+                && this.lexeme.equals(token.lexeme)
+                && Objects.equals(this.literal, token.literal)
+                && this.line() == token.line();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.tokenType, this.lexeme, this.literal);
+    }
+
     @Override
     public String toString() {
         return this.tokenType + " " + this.lexeme + " " + this.literal;
@@ -0,0 +1,423 @@
+package dev.backendsouls.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Static pass over the optional type annotations on variables, parameters and returns. Runs after
+// parsing and reports mismatches it can prove as compile errors. Every error involves an
+// annotation, so code without annotations passes unchanged and fails, if at all, at runtime.
+//
+// What it can't prove is checked when the program runs instead, where a value crosses into an
+// annotated name: a typed variable's initializer, a typed parameter and a typed return. Assigning
+// to a typed variable has no such check, so there the value must be provably of the right type.
+// Together these keep every typed variable holding its type, which is what lets the compiler keep
+// `num` locals in unboxed doubles. A body that lazy parsing hasn't reached yet is checked when it
+// is parsed, against the scopes around its declaration, and its function fails if that finds
+// errors, so no unchecked body ever runs or gets compiled.
+final class TypeChecker implements Expr.Visitor<TypeChecker.Type>, Stmt.Visitor<Void> {
+    enum Type {
+        NUM("num"), STR("str"), BOOL("bool"), NIL("nil"), LIST("list"), MAP("map"), FN("fn"), ANY("any");
+
+        final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        // Null for a missing or unknown annotation; nil isn't a type that can be written down.
+        static Type of(Token annotation) {
+            for (var type : values()) {
+                if (annotation != null && type != NIL && type.name.equals(annotation.lexeme())) {
+                    return type;
+                }
+            }
+
+            return null;
+        }
+
+        boolean accepts(Type value) {
+            return this == ANY || value == ANY || this == value;
+        }
+    }
+
+    // A declared function's name is an untyped variable that, as long as nothing assigns it,
+    // also carries the function's signature.
+    private record Binding(Type type, Stmt.Function function) {
+    }
+
+    private static final Map<String, Type> NATIVES = Map.of(
+            "clock", Type.NUM, "len", Type.NUM, "list", Type.LIST, "array", Type.LIST, "map", Type.MAP,
+            "has", Type.BOOL, "keys", Type.LIST, "parallelMap", Type.LIST, "hasNext", Type.BOOL,
+            "collect", Type.LIST
+    );
+
+    private final ErrorReporter reporter;
+
+    private final Deque<Map<String, Binding>> scopes = new ArrayDeque<>();
+
+    private final Set<String> assigned = new HashSet<>();
+
+    // The function whose body is being checked; null at the top level.
+    private Stmt.Function function;
+
+    private boolean failed = false;
+
+    private TypeChecker(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    static void check(List<Stmt> statements, ErrorReporter reporter) {
+        new TypeChecker(reporter).checkScript(statements);
+    }
+
+    private void checkScript(List<Stmt> statements) {
+        for (var statement : statements) {
+            JavaEmitter.assignedNames(statement, this.assigned);
+        }
+
+        // Globals are visible to every function body, including the ones declared before them.
+        var globals = new HashMap<String, Binding>();
+        this.scopes.push(globals);
+
+        for (var statement : statements) {
+            if (statement instanceof Stmt.Var var) {
+                var type = Type.of(var.type());
+                globals.put(var.name().lexeme(), new Binding(type == null ? Type.ANY : type, null));
+            } else if (statement instanceof Stmt.Function declaration) {
+                globals.put(declaration.name().lexeme(), this.binding(declaration));
+            }
+        }
+
+        this.checkAll(statements);
+    }
+
+    // Statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        this.scopes.push(new HashMap<>());
+        this.checkAll(stmt.statements());
+        this.scopes.pop();
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        this.type(stmt.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        this.type(stmt.start());
+        this.scopes.push(new HashMap<>());
+
+        // The counter only gets past the loop test as a number.
+        this.declare(stmt.name(), Type.NUM);
+        this.type(stmt.limit());
+        this.checkAll(stmt.body());
+        this.scopes.pop();
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        this.scopes.peek().put(stmt.name().lexeme(), this.binding(stmt));
+
+        var scope = new HashMap<String, Binding>();
+        for (var i = 0; i < stmt.params().size(); i++) {
+            scope.put(stmt.params().get(i).lexeme(), new Binding(this.annotation(stmt.types().get(i)), null));
+        }
+
+        var returnType = this.annotation(stmt.returnType());
+
+        // An unparsed body is checked once it's parsed, against the scopes visible here. Those can
+        // only gain names by then, and the body can see those too.
+        if (stmt.body() instanceof LazyBody body && !body.isParsed()) {
+            var checker = new TypeChecker(this.reporter);
+            checker.assigned.addAll(this.assigned);
+            checker.scopes.addAll(this.scopes);
+            body.check(statements -> checker.checkBody(stmt, scope, returnType, statements));
+
+            return null;
+        }
+
+        this.checkBody(stmt, scope, returnType, stmt.body());
+        return null;
+    }
+
+    // True when the body has no errors.
+    private boolean checkBody(Stmt.Function stmt, Map<String, Binding> scope, Type returnType, List<Stmt> body) {
+        if (stmt.returnType() != null && LoxFunction.yields(body)) {
+            this.error(stmt.returnType(), "A generator can't declare a return type.");
+        }
+
+        var enclosing = this.function;
+        this.function = returnType == Type.ANY ? null : stmt;
+        this.scopes.push(scope);
+        this.checkAll(body);
+        this.scopes.pop();
+        this.function = enclosing;
+
+        return !this.failed;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        this.type(stmt.condition());
+        this.check(stmt.thenBranch());
+        this.check(stmt.elseBranch());
+
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        this.type(stmt.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        var value = stmt.value() == null ? Type.NIL : this.type(stmt.value());
+
+        if (this.function == null) {
+            return null;
+        }
+
+        var expected = Type.of(this.function.returnType());
+        if (expected != null && !expected.accepts(value)) {
+            this.error(stmt.keyword(), "Can't return " + value.name + " from '"
+                    + this.function.name().lexeme() + "', which returns " + expected.name + ".");
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        var value = stmt.initializer() == null ? Type.NIL : this.type(stmt.initializer());
+        var type = this.annotation(stmt.type());
+
+        if (!type.accepts(value)) {
+            this.error(stmt.name(), "Can't initialize '" + stmt.name().lexeme() + "' of type "
+                    + type.name + " with " + value.name + ".");
+        }
+
+        this.declare(stmt.name(), type);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        this.type(stmt.condition());
+        this.check(stmt.body());
+
+        return null;
+    }
+
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        this.type(stmt.value());
+        return null;
+    }
+
+    // Expressions
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        var value = this.type(expr.value());
+        var binding = this.lookup(expr.name().lexeme());
+
+        if (binding == null || binding.type() == Type.ANY) {
+            return value;
+        }
+
+        if (value == Type.ANY) {
+            this.error(expr.name(), "Can't assign a value of unknown type to '" + expr.name().lexeme()
+                    + "' of type " + binding.type().name + "; declare a typed variable for it first.");
+        } else if (value != binding.type()) {
+            this.error(expr.name(), "Can't assign " + value.name + " to '" + expr.name().lexeme()
+                    + "' of type " + binding.type().name + ".");
+        }
+
+        return binding.type();
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        var left = this.type(expr.left());
+        var right = this.type(expr.right());
+
+        // Operand errors are left to the runtime, as they are in untyped code. An operator that
+        // gets past them has a result of a known type, except for + on operands of unknown type.
+        return switch (expr.operator().tokenType()) {
+            case TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL, TokenType.GREATER, TokenType.GREATER_EQUAL,
+                 TokenType.LESS, TokenType.LESS_EQUAL -> Type.BOOL;
+            case TokenType.PLUS -> left == right && (left == Type.NUM || left == Type.STR) ? left : Type.ANY;
+            default -> Type.NUM;
+        };
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        var arguments = expr.arguments().stream().map(this::type).toList();
+
+        if (!(expr.callee() instanceof Expr.Variable variable)) {
+            this.type(expr.callee());
+            return Type.ANY;
+        }
+
+        var name = variable.name().lexeme();
+        var binding = this.lookup(name);
+
+        if (binding == null) {
+            return NATIVES.getOrDefault(name, Type.ANY);
+        }
+
+        var function = binding.function();
+        if (function == null || function.params().size() != arguments.size()) {
+            return Type.ANY;
+        }
+
+        for (var i = 0; i < arguments.size(); i++) {
+            var expected = Type.of(function.types().get(i));
+
+            if (expected != null && !expected.accepts(arguments.get(i))) {
+                this.error(expr.paren(), "Argument " + (i + 1) + " of '" + name + "' must be "
+                        + expected.name + ", got " + arguments.get(i).name + ".");
+            }
+        }
+
+        var returnType = Type.of(function.returnType());
+        return returnType == null ? Type.ANY : returnType;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return this.type(expr.expression());
+    }
+
+    @Override
+    public Type visitIndexExpr(Expr.Index expr) {
+        this.type(expr.object());
+        this.type(expr.index());
+
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitIndexSetExpr(Expr.IndexSet expr) {
+        this.type(expr.object());
+        this.type(expr.index());
+
+        return this.type(expr.value());
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        return switch (expr.value()) {
+            case null -> Type.NIL;
+            case Double number -> Type.NUM;
+            case String string -> Type.STR;
+            case Boolean bool -> Type.BOOL;
+            default -> Type.ANY;
+        };
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        var left = this.type(expr.left());
+        var right = this.type(expr.right());
+
+        return left == right ? left : Type.ANY;
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        this.type(expr.right());
+        return expr.operator().tokenType() == TokenType.BANG ? Type.BOOL : Type.NUM;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        var binding = this.lookup(expr.name().lexeme());
+
+        if (binding == null) {
+            return Natives.get(expr.name().lexeme()) != null ? Type.FN : Type.ANY;
+        }
+
+        return binding.type();
+    }
+
+    // Helpers
+
+    private void checkAll(List<Stmt> statements) {
+        for (var statement : statements) {
+            this.check(statement);
+        }
+    }
+
+    // Statements that failed to parse are null.
+    private void check(Stmt statement) {
+        if (statement != null) {
+            statement.accept(this);
+        }
+    }
+
+    private Type type(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Missing annotations are `any`, and so are unknown ones once they are reported.
+    private Type annotation(Token annotation) {
+        if (annotation == null) {
+            return Type.ANY;
+        }
+
+        var type = Type.of(annotation);
+        if (type == null) {
+            this.error(annotation, "Unknown type '" + annotation.lexeme() + "'.");
+            return Type.ANY;
+        }
+
+        return type;
+    }
+
+    static boolean isParsed(Stmt.Function declaration) {
+        return !(declaration.body() instanceof LazyBody body) || body.isParsed();
+    }
+
+    private void error(Token token, String message) {
+        this.failed = true;
+        this.reporter.error(token, message);
+    }
+
+    private Binding binding(Stmt.Function declaration) {
+        var name = declaration.name().lexeme();
+        return new Binding(Type.ANY, this.assigned.contains(name) ? null : declaration);
+    }
+
+    private void declare(Token name, Type type) {
+        this.scopes.peek().put(name.lexeme(), new Binding(type, null));
+    }
+
+    private Binding lookup(String name) {
+        for (var scope : this.scopes) {
+            var binding = scope.get(name);
+
+            if (binding != null) {
+                return binding;
+            }
+        }
+
+        return null;
+    }
+}
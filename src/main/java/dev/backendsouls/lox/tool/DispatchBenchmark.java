@@ -0,0 +1,59 @@
+package dev.backendsouls.lox.tool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Compares the interpreter's node dispatch strategies (-Djlox.dispatch) on one script. Each run is
+// a fresh JVM with the Lox JIT disabled, so the whole script stays in the tree walker, and the
+// strategies take turns so that drift in the machine affects them all alike, e.g.
+// java -cp target/classes dev.backendsouls.lox.tool.DispatchBenchmark 10 script.lox
+public class DispatchBenchmark {
+    private static final List<String> STRATEGIES = List.of("visitor", "tags", "patterns");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 2) {
+            System.err.println("Usage: dispatch_benchmark <runs> <script>");
+            System.exit(64);
+        }
+
+        var runs = Integer.parseInt(args[0]);
+        var times = new LinkedHashMap<String, List<Double>>();
+
+        for (var strategy : STRATEGIES) {
+            times.put(strategy, new ArrayList<>());
+        }
+
+        for (var i = 0; i < runs; i++) {
+            for (var strategy : STRATEGIES) {
+                times.get(strategy).add(run(strategy, args[1]));
+            }
+        }
+
+        System.out.println(args[1]);
+        for (var entry : times.entrySet()) {
+            var sorted = entry.getValue();
+            Collections.sort(sorted);
+            System.out.printf("%-9s runs: %d  min: %.0f ms  median: %.0f ms%n",
+                    entry.getKey(), runs, sorted.get(0), sorted.get(runs / 2));
+        }
+    }
+
+    private static double run(String strategy, String script) throws IOException, InterruptedException {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var command = List.of(
+                java, "-Djlox.jit.disable=true", "-Djlox.dispatch=" + strategy,
+                "-cp", System.getProperty("java.class.path"), "dev.backendsouls.lox.Lox", script
+        );
+
+        var start = System.nanoTime();
+        var process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectErrorStream(true).start();
+        process.waitFor();
+
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -15,27 +15,35 @@ public class GenerateAst {
 
         var outputDir = args[0];
 
-        defineAst(outputDir, "Expr", Arrays.asList(
+        var exprTypes = Arrays.asList(
                 "Assign   : Token name, Expr value",
                 "Binary   : Expr left, Token operator, Expr right",
                 "Call     : Expr callee, Token paren, List<Expr> arguments",
                 "Grouping : Expr expression",
+                "Index    : Expr object, Token bracket, Expr index",
+                "IndexSet : Expr object, Token bracket, Expr index, Expr value",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Unary    : Token operator, Expr right",
                 "Variable : Token name"
-        ));
+        );
 
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        var stmtTypes = Arrays.asList(
                 "Block      : List<Stmt> statements",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "For        : Token name, Expr start, Token operator, Expr limit, boolean invariant, double step, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body, List<Token> types, Token returnType",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"
-        ));
+                "Var        : Token name, Expr initializer, Token type",
+                "While      : Expr condition, Stmt body",
+                "Yield      : Token keyword, Expr value"
+        );
+
+        defineAst(outputDir, "Expr", exprTypes);
+        defineAst(outputDir, "Stmt", stmtTypes);
+        defineFlatAst(outputDir, exprTypes, stmtTypes);
     }
 
     private static void defineAst(final String outputDir, final String baseName, List<String> types) throws IOException {
@@ -46,31 +54,46 @@ public class GenerateAst {
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("public interface " + baseName + " {");
+        writer.println("public sealed interface " + baseName + " {");
 
         defineVisitor(writer, baseName, types);
 
+        // Dense tags, one per node type, in declaration order.
+        for (var i = 0; i < types.size(); i++) {
+            writer.println("    int " + tagName(types.get(i)) + " = " + i + ";");
+        }
+        writer.println();
+
         // The AST classes.
         for (var type : types) {
             var recordName = type.split(":")[0].trim();
             var fields = type.split(":")[1].trim();
-            defineType(writer, baseName, recordName, fields);
+            defineType(writer, baseName, recordName, fields, tagName(type));
         }
 
+        writer.println("    int tag();");
+        writer.println();
         writer.println("    <R> R accept(Visitor<R> visitor);");
 
+        defineDispatch(writer, baseName, types);
+
         writer.println("}");
         writer.close();
     }
 
     private static void defineType(
             final PrintWriter writer, final String baseName,
-            final String recordName, final String fieldList
+            final String recordName, final String fieldList, final String tag
     ) {
         var record = "    record " + recordName + "(" + fieldList + ")" + " implements " + baseName + " {";
 
         writer.println(record);
 
+        writer.println("        @Override");
+        writer.println("        public int tag() {");
+        writer.println("            return " + tag + ";");
+        writer.println("        }");
+        writer.println();
         writer.println("        @Override");
         writer.println("        public <R> R accept(Visitor<R> visitor) {");
         writer.println("            return visitor.visit" + recordName + baseName + "(this);");
@@ -96,4 +119,224 @@ public class GenerateAst {
         writer.println("    }");
         writer.println();
     }
+
+    // Two alternatives to accept, both static so that they inline into the caller, where the
+    // visitor's type is known: a tableswitch over tags, and a pattern switch over the sealed types.
+    private static void defineDispatch(
+            final PrintWriter writer, final String baseName, List<String> types
+    ) {
+        var node = baseName.toLowerCase();
+
+        writer.println();
+        writer.println("    static <R> R dispatch(" + baseName + " " + node + ", Visitor<R> visitor) {");
+        writer.println("        return switch (" + node + ".tag()) {");
+        for (var type : types) {
+            var typeName = type.split(":")[0].trim();
+            writer.println("            case " + tagName(type) + " -> visitor.visit" + typeName + baseName
+                    + "((" + typeName + ") " + node + ");");
+        }
+        writer.println("            default -> throw new IllegalStateException(\"Unknown tag \" + " + node + ".tag());");
+        writer.println("        };");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static <R> R match(" + baseName + " " + node + ", Visitor<R> visitor) {");
+        writer.println("        return switch (" + node + ") {");
+        for (var type : types) {
+            var typeName = type.split(":")[0].trim();
+            writer.println("            case " + typeName + " node -> visitor.visit" + typeName + baseName + "(node);");
+        }
+        writer.println("        };");
+        writer.println("    }");
+    }
+
+    // The same trees flattened into parallel arrays, walked by index instead of through references.
+    private static void defineFlatAst(
+            final String outputDir, List<String> exprTypes, List<String> stmtTypes
+    ) throws IOException {
+        var writer = new PrintWriter(outputDir + "/FlatAst.java", StandardCharsets.UTF_8);
+
+        writer.println("package dev.backendsouls.lox;");
+        writer.println();
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.Arrays;");
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("// Generated by tool/GenerateAst: Expr and Stmt trees flattened into parallel arrays. Node n has");
+        writer.println("// kind kinds[n] and its fields, in declaration order, at operands[firsts[n]...]: child nodes by");
+        writer.println("// index (-1 for null), booleans as 0 or 1, lists as the offset of a count followed by node");
+        writer.println("// indices, and everything else as an index into the constant pool. A function declaration also");
+        writer.println("// keeps its record as a last constant, because it turns into a LoxFunction at runtime.");
+        writer.println("final class FlatAst {");
+
+        var kind = 0;
+        for (var type : exprTypes) {
+            writer.println("    static final int " + kindName(type, "Expr") + " = " + kind++ + ";");
+        }
+        for (var type : stmtTypes) {
+            writer.println("    static final int " + kindName(type, "Stmt") + " = " + kind++ + ";");
+        }
+
+        writer.println();
+        writer.println("    final int[] kinds;");
+        writer.println("    final int[] firsts;");
+        writer.println("    final int[] operands;");
+        writer.println("    final Object[] constants;");
+        writer.println();
+        writer.println("    // The list of top-level statements.");
+        writer.println("    final int root;");
+        writer.println();
+        writer.println("    private FlatAst(Builder builder, int root) {");
+        writer.println("        this.kinds = Arrays.copyOf(builder.kinds, builder.nodes);");
+        writer.println("        this.firsts = Arrays.copyOf(builder.firsts, builder.nodes);");
+        writer.println("        this.operands = Arrays.copyOf(builder.operands, builder.size);");
+        writer.println("        this.constants = builder.constants.toArray();");
+        writer.println("        this.root = root;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static FlatAst of(List<Stmt> statements) {");
+        writer.println("        var builder = new Builder();");
+        writer.println("        var root = builder.stmts(statements);");
+        writer.println();
+        writer.println("        return new FlatAst(builder, root);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int operand(int node, int field) {");
+        writer.println("        return this.operands[this.firsts[node] + field];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    Object constant(int node, int field) {");
+        writer.println("        return this.constants[this.operands[this.firsts[node] + field]];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    Token token(int node, int field) {");
+        writer.println("        return (Token) this.constant(node, field);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static final class Builder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+        writer.println("        private int[] kinds = new int[64];");
+        writer.println("        private int[] firsts = new int[64];");
+        writer.println("        private int[] operands = new int[256];");
+        writer.println("        private final List<Object> constants = new ArrayList<>();");
+        writer.println("        private int nodes = 0;");
+        writer.println("        private int size = 0;");
+        writer.println();
+        writer.println("        private int node(int kind, int fields) {");
+        writer.println("            if (this.nodes == this.kinds.length) {");
+        writer.println("                this.kinds = Arrays.copyOf(this.kinds, this.nodes * 2);");
+        writer.println("                this.firsts = Arrays.copyOf(this.firsts, this.nodes * 2);");
+        writer.println("            }");
+        writer.println();
+        writer.println("            this.kinds[this.nodes] = kind;");
+        writer.println("            this.firsts[this.nodes] = this.reserve(fields);");
+        writer.println();
+        writer.println("            return this.nodes++;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int reserve(int count) {");
+        writer.println("            while (this.size + count > this.operands.length) {");
+        writer.println("                this.operands = Arrays.copyOf(this.operands, this.operands.length * 2);");
+        writer.println("            }");
+        writer.println();
+        writer.println("            this.size += count;");
+        writer.println("            return this.size - count;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private void set(int node, int field, int value) {");
+        writer.println("            this.operands[this.firsts[node] + field] = value;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int constant(Object value) {");
+        writer.println("            this.constants.add(value);");
+        writer.println("            return this.constants.size() - 1;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int expr(Expr expr) {");
+        writer.println("            return expr == null ? -1 : expr.accept(this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int stmt(Stmt stmt) {");
+        writer.println("            return stmt == null ? -1 : stmt.accept(this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int exprs(List<Expr> exprs) {");
+        writer.println("            var list = this.reserve(exprs.size() + 1);");
+        writer.println("            this.operands[list] = exprs.size();");
+        writer.println();
+        writer.println("            for (var i = 0; i < exprs.size(); i++) {");
+        writer.println("                var child = this.expr(exprs.get(i));");
+        writer.println("                this.operands[list + 1 + i] = child;");
+        writer.println("            }");
+        writer.println();
+        writer.println("            return list;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        private int stmts(List<Stmt> stmts) {");
+        writer.println("            var list = this.reserve(stmts.size() + 1);");
+        writer.println("            this.operands[list] = stmts.size();");
+        writer.println();
+        writer.println("            for (var i = 0; i < stmts.size(); i++) {");
+        writer.println("                var child = this.stmt(stmts.get(i));");
+        writer.println("                this.operands[list + 1 + i] = child;");
+        writer.println("            }");
+        writer.println();
+        writer.println("            return list;");
+        writer.println("        }");
+
+        for (var type : exprTypes) {
+            defineFlatVisit(writer, "Expr", type);
+        }
+        for (var type : stmtTypes) {
+            defineFlatVisit(writer, "Stmt", type);
+        }
+
+        writer.println("    }");
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineFlatVisit(final PrintWriter writer, final String baseName, final String type) {
+        var recordName = type.split(":")[0].trim();
+        var fields = type.split(":")[1].trim().split(", ");
+        var parameter = baseName.toLowerCase();
+        var keepRecord = recordName.equals("Function");
+
+        writer.println();
+        writer.println("        @Override");
+        writer.println("        public Integer visit" + recordName + baseName + "(" + baseName + "." + recordName + " " + parameter + ") {");
+        writer.println("            var node = this.node(" + kindName(type, baseName) + ", " + (fields.length + (keepRecord ? 1 : 0)) + ");");
+
+        for (var i = 0; i < fields.length; i++) {
+            var fieldType = fields[i].split(" ")[0];
+            var value = parameter + "." + fields[i].split(" ")[1] + "()";
+
+            var operand = switch (fieldType) {
+                case "Expr" -> "this.expr(" + value + ")";
+                case "Stmt" -> "this.stmt(" + value + ")";
+                case "List<Expr>" -> "this.exprs(" + value + ")";
+                case "List<Stmt>" -> "this.stmts(" + value + ")";
+                case "boolean" -> value + " ? 1 : 0";
+                default -> "this.constant(" + value + ")";
+            };
+
+            writer.println("            this.set(node, " + i + ", " + operand + ");");
+        }
+
+        if (keepRecord) {
+            writer.println("            this.set(node, " + fields.length + ", this.constant(" + parameter + "));");
+        }
+
+        writer.println("            return node;");
+        writer.println("        }");
+    }
+
+    // IndexSet in Expr becomes INDEX_SET_EXPR.
+    private static String tagName(final String type) {
+        var recordName = type.split(":")[0].trim();
+        return recordName.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+    }
+
+    private static String kindName(final String type, final String baseName) {
+        var recordName = type.split(":")[0].trim();
+        return (recordName.replaceAll("([a-z])([A-Z])", "$1_$2") + "_" + baseName).toUpperCase();
+    }
 }
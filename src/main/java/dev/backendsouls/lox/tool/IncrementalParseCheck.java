@@ -0,0 +1,105 @@
+package dev.backendsouls.lox.tool;
+
+import dev.backendsouls.lox.ErrorReporter;
+import dev.backendsouls.lox.IncrementalParser;
+import dev.backendsouls.lox.Parser;
+import dev.backendsouls.lox.Scanner;
+import dev.backendsouls.lox.Stmt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+// Checks IncrementalParser against full parses: applies random edits to each script, each followed
+// by its undo, and after every step compares the incrementally updated statements with a parse of
+// the whole text from scratch. Steps that leave the text with syntax errors are skipped, since
+// error recovery differs between a chunk and the whole file. Exits with 1 on the first mismatch, e.g.
+// java -cp target/classes dev.backendsouls.lox.tool.IncrementalParseCheck 1000 src/test/resources/*.lox
+public class IncrementalParseCheck {
+    private static final ErrorReporter QUIET = new ErrorReporter(new PrintStream(OutputStream.nullOutputStream()));
+
+    private static final String[] SNIPPETS = {
+            "", "\n", " ", ";", "}", "{", "\"", "//", "var x = 1;\n", "fun f(a) { return a; }\n", "else", "(",
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: incremental_parse_check <edits> <script>...");
+            System.exit(64);
+        }
+
+        // Deeply nested scripts need as much stack as Lox gives the parser.
+        var thread = new Thread(null, () -> {
+            try {
+                run(args);
+            } catch (IOException error) {
+                fail(error.getMessage(), "could not be read");
+            }
+        }, "check", 256L << 20);
+
+        thread.start();
+        thread.join();
+    }
+
+    private static void run(String[] args) throws IOException {
+        var edits = Integer.parseInt(args[0]);
+        var random = new Random(42);
+        var checked = 0;
+
+        for (var i = 1; i < args.length; i++) {
+            var source = Files.readString(Paths.get(args[i]), Charset.defaultCharset());
+            var document = new IncrementalParser(source, QUIET);
+
+            for (var edit = 0; edit < edits; edit++) {
+                var text = document.source();
+                var offset = random.nextInt(text.length() + 1);
+                var length = random.nextInt(Math.min(8, text.length() - offset) + 1);
+                var insert = random.nextBoolean()
+                        ? SNIPPETS[random.nextInt(SNIPPETS.length)]
+                        : text.substring(random.nextInt(text.length() + 1 - length)).substring(0, length);
+
+                if (random.nextInt(4) == 0) {
+                    document.replace(text.substring(0, offset) + insert + text.substring(offset + length));
+                } else {
+                    document.edit(offset, length, insert);
+                }
+                checked += check(args[i], document);
+
+                document.edit(offset, insert.length(), text.substring(offset, offset + length));
+                checked += check(args[i], document);
+
+                if (!document.source().equals(text)) {
+                    fail(args[i], "undo didn't restore the text");
+                }
+            }
+        }
+
+        System.out.printf("%d scripts, %d edits, %d parses matched%n", args.length - 1, edits, checked);
+    }
+
+    private static int check(String path, IncrementalParser document) {
+        var reporter = new ErrorReporter(new PrintStream(OutputStream.nullOutputStream()));
+        var tokens = new Scanner(document.source(), 1, reporter).scanTokens();
+        List<Stmt> expected = new Parser(tokens, reporter).parse();
+
+        if (reporter.hadError()) {
+            return 0;
+        }
+
+        if (!document.statements().equals(expected)) {
+            fail(path, "incremental parse differs from a full parse of:\n" + document.source());
+        }
+
+        return 1;
+    }
+
+    private static void fail(String path, String message) {
+        System.err.println(path + ": " + message);
+        System.exit(1);
+    }
+}
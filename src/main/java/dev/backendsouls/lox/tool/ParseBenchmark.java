@@ -0,0 +1,43 @@
+package dev.backendsouls.lox.tool;
+
+import dev.backendsouls.lox.ErrorReporter;
+import dev.backendsouls.lox.Parser;
+import dev.backendsouls.lox.Scanner;
+import dev.backendsouls.lox.Token;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+// Measures parse throughput: scans a script once, then parses its tokens over and over in one JVM.
+// The first half of the runs only warm up the JIT, e.g.
+// java -cp target/classes dev.backendsouls.lox.tool.ParseBenchmark 200 script.lox
+public class ParseBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: parse_benchmark <runs> <script>");
+            System.exit(64);
+        }
+
+        var runs = Integer.parseInt(args[0]);
+        var source = Files.readString(Paths.get(args[1]), Charset.defaultCharset());
+        var reporter = new ErrorReporter(System.err);
+        List<Token> tokens = new Scanner(source, 1, reporter).scanTokens();
+
+        for (var i = 0; i < runs / 2; i++) {
+            new Parser(tokens, reporter).parse();
+        }
+
+        var start = System.nanoTime();
+        for (var i = runs / 2; i < runs; i++) {
+            new Parser(tokens, reporter).parse();
+        }
+        var seconds = (System.nanoTime() - start) / 1e9;
+        var parsed = runs - runs / 2;
+
+        System.out.printf("%s%ntokens: %d  runs: %d  %.2f ms/parse  %.1f M tokens/s%n",
+                args[1], tokens.size(), parsed, seconds * 1000 / parsed, tokens.size() * parsed / seconds / 1e6);
+    }
+}
@@ -0,0 +1,57 @@
+package dev.backendsouls.lox.tool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Measures time-to-first-statement: how long from launching a command until the first line of
+// output appears. Point it at a script whose first statement prints, e.g.
+// startup_benchmark 20 bin/jlox src/test/resources/01.lox
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: startup_benchmark <runs> <command...>");
+            System.exit(64);
+        }
+
+        var runs = Integer.parseInt(args[0]);
+        var command = Arrays.asList(args).subList(1, args.length);
+        var times = new ArrayList<Double>();
+
+        // One untimed run warms the OS file cache.
+        firstLine(command);
+
+        for (var i = 0; i < runs; i++) {
+            times.add(firstLine(command));
+        }
+
+        Collections.sort(times);
+        System.out.printf("%s%nruns: %d  min: %.1f ms  median: %.1f ms  max: %.1f ms%n",
+                String.join(" ", command), runs, times.get(0), times.get(runs / 2), times.get(runs - 1));
+    }
+
+    private static double firstLine(List<String> command) throws IOException, InterruptedException {
+        var start = System.nanoTime();
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            var line = reader.readLine();
+            var elapsed = (System.nanoTime() - start) / 1e6;
+
+            if (line == null) {
+                throw new IOException("No output from " + String.join(" ", command));
+            }
+
+            while (reader.readLine() != null) {
+                // Drain so the process can exit.
+            }
+
+            process.waitFor();
+            return elapsed;
+        }
+    }
+}